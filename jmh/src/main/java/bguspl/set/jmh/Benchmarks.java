@@ -0,0 +1,58 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * The game environments the benchmarks run in.
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Creates a headless game environment with no table delays and a fixed seed.
+     *
+     * @param properties - pairs of configuration keys and values overriding the defaults.
+     * @return - the environment.
+     */
+    static Env env(String... properties) {
+        Properties p = new Properties();
+        p.setProperty("LogLevel", "OFF");
+        p.setProperty("Seed", "1");
+        p.setProperty("TableDelaySeconds", "0");
+        p.setProperty("HumanPlayers", "1");
+        p.setProperty("PlayerKeys1", "");
+        for (int i = 0; i + 1 < properties.length; i += 2)
+            p.setProperty(properties[i], properties[i + 1]);
+
+        Logger logger = Logger.getLogger("SetBenchmarkLogger");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, p);
+        return new Env(logger, config, new UserInterfaceHeadless(UserInterfaceHeadless.Mode.NO_OP, 0), new UtilImpl(config));
+    }
+
+    /**
+     * Creates a headless game environment with a deck shape.
+     *
+     * @param shape      - the feature size and the feature count, as "3x4".
+     * @param properties - pairs of configuration keys and values overriding the defaults.
+     * @return - the environment.
+     */
+    static Env shaped(String shape, String... properties) {
+        String[] sizes = shape.split("x");
+        String[] all = new String[properties.length + 4];
+        all[0] = "FeatureSize";
+        all[1] = sizes[0];
+        all[2] = "FeatureCount";
+        all[3] = sizes[1];
+        System.arraycopy(properties, 0, all, 4, properties.length);
+        return env(all);
+    }
+}
@@ -0,0 +1,71 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmarks of UtilImpl.findSets, the search the dealer and the hints run over the table (or the whole deck).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindSetsBenchmark {
+
+    /**
+     * The feature size and the feature count.
+     */
+    @Param({"3x3", "3x4", "4x4"})
+    public String shape;
+
+    /**
+     * The number of cards searched: a table of 12, a table of 21, or the whole deck.
+     */
+    @Param({"12", "21", "deck"})
+    public String cards;
+
+    /**
+     * The number of sets looked for (the first one, or all of them).
+     */
+    @Param({"1", "all"})
+    public String count;
+
+    private Env env;
+    private List<Integer> deck;
+    private int sets;
+
+    @Setup
+    public void setup() {
+        env = Benchmarks.shaped(shape);
+        List<Integer> all = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(all, new Random(env.config.seed));
+        int size = cards.equals("deck") ? all.size() : Math.min(Integer.parseInt(cards), all.size());
+        deck = new ArrayList<>(all.subList(0, size));
+        sets = count.equals("all") ? Integer.MAX_VALUE : Integer.parseInt(count);
+    }
+
+    @Benchmark
+    public List<int[]> findSets() {
+        return env.util.findSets(deck, sets);
+    }
+}
@@ -0,0 +1,96 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Env;
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Benchmarks of the hand-off of claims to the dealer (Dealer.addSetToQueue) under contention.
+ * The producers are threads that each keep a single claim in flight, like players waiting for a verdict; the benchmark
+ * thread is the consumer, taking a claim off the dealer's queue the way the dealer thread does and releasing its
+ * producer. An operation is one claim handed over and released.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandOffBenchmark {
+
+    /**
+     * The number of producer threads (players).
+     */
+    @Param({"1", "4", "16", "64"})
+    public int producers;
+
+    private Dealer dealer;
+    private AtomicIntegerArray pending;
+    private Thread[] producerThreads;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Env env = Benchmarks.env("ComputerPlayers", Integer.toString(producers - 1));
+        dealer = new Dealer(env, new Table(env), new Player[producers]);
+        pending = new AtomicIntegerArray(producers);
+        producerThreads = new Thread[producers];
+        running = true;
+        for (int i = 0; i < producers; ++i) {
+            int producer = i;
+            producerThreads[i] = new Thread(() -> {
+                int[][] claim = new int[3][3];
+                claim[2][0] = producer;
+                while (running) {
+                    pending.set(producer, 1);
+                    dealer.addSetToQueue(claim);
+                    while (running && pending.get(producer) == 1)
+                        LockSupport.parkNanos(1_000_000L);
+                }
+            }, "producer-" + i);
+            producerThreads[i].setDaemon(true);
+            producerThreads[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread t : producerThreads) {
+            LockSupport.unpark(t);
+            t.join();
+        }
+    }
+
+    @Benchmark
+    public int[][] handOff() throws InterruptedException {
+        int[][] claim;
+        synchronized (dealer) {
+            while (dealer.requests.isEmpty())
+                dealer.wait();
+            claim = dealer.requests.remove();
+        }
+        int producer = claim[2][0];
+        pending.set(producer, 0);
+        LockSupport.unpark(producerThreads[producer]);
+        return claim;
+    }
+}
@@ -0,0 +1,117 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Env;
+import bguspl.set.InputPort;
+import bguspl.set.InputServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the input server: loopback clients send key presses as fast as they can, and the server dispatches
+ * them to a port that only counts them. An operation is a batch of BATCH presses dispatched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputServerBenchmark {
+
+    public static final int BATCH = 1024;
+
+    /**
+     * The number of connected clients (remote players).
+     */
+    @Param({"1", "16"})
+    public int clients;
+
+    private InputServer server;
+    private Thread[] clientThreads;
+    private volatile boolean running;
+
+    /**
+     * Released once every BATCH presses dispatched (by the server thread only).
+     */
+    private final Semaphore batches = new Semaphore(0);
+    private int dispatched;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Env env = Benchmarks.env("InputServerPort", "0", "InputRateLimit", "0");
+        server = new InputServer(env.logger, env.config, new InputPort() {
+            @Override
+            public int players() {
+                return clients;
+            }
+
+            @Override
+            public int slots() {
+                return env.config.tableSize;
+            }
+
+            @Override
+            public boolean press(int player, int slot) {
+                if (++dispatched == BATCH) {
+                    dispatched = 0;
+                    batches.release();
+                }
+                return true;
+            }
+        });
+        server.start();
+        running = true;
+        clientThreads = new Thread[clients];
+        for (int i = 0; i < clients; ++i) {
+            int player = i;
+            clientThreads[i] = new Thread(() -> {
+                ByteBuffer frames = ByteBuffer.allocate(BATCH * InputServer.FRAME_BYTES);
+                while (frames.hasRemaining())
+                    frames.put(InputServer.PRESS).putShort((short) (frames.position() % env.config.tableSize));
+                try (SocketChannel channel = SocketChannel.open(server.address())) {
+                    channel.write(ByteBuffer.wrap(new byte[]{InputServer.HELLO, 0, (byte) player}));
+                    while (running) {
+                        frames.flip();
+                        while (frames.hasRemaining())
+                            channel.write(frames);
+                    }
+                } catch (IOException e) {
+                    if (running) throw new UncheckedIOException(e);
+                }
+            }, "client-" + i);
+            clientThreads[i].setDaemon(true);
+            clientThreads[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        server.stop();
+        for (Thread t : clientThreads)
+            t.join(1000);
+    }
+
+    @Benchmark
+    public void presses() throws InterruptedException {
+        batches.acquire();
+    }
+}
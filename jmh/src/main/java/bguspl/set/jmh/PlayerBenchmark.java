@@ -0,0 +1,62 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Env;
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of a key press, from queueing it to placing or removing the token (as the player thread does).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerBenchmark {
+
+    /**
+     * The feature size and the feature count.
+     */
+    @Param({"3x3", "3x4", "4x4"})
+    public String shape;
+
+    private Player player;
+
+    @Setup
+    public void setup() {
+        Env env = Benchmarks.shaped(shape);
+        Table table = new Table(env);
+        Player[] players = new Player[env.config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        players[0] = new Player(env, dealer, table, 0, true);
+        for (int slot = 0; slot < env.config.tableSize; ++slot)
+            table.placeCard(slot, slot);
+        dealer.cardsOnTable = true;
+        player = players[0];
+    }
+
+    /**
+     * Toggles the player's token on the same slot, so the set is never completed.
+     */
+    @Benchmark
+    public boolean keyPressedAndAction() {
+        boolean accepted = player.keyPressed(0);
+        player.actionFromQueue(player.incomingActions.remove());
+        return accepted;
+    }
+}
@@ -0,0 +1,63 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Env;
+import bguspl.set.ex.StateSlab;
+import bguspl.set.ex.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of dealing a card to a random slot of the table and taking it back (which keeps the count of the sets on
+ * the table up to date).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+
+    /**
+     * The feature size and the feature count.
+     */
+    @Param({"3x3", "3x4", "4x4"})
+    public String shape;
+
+    /**
+     * Whether the table is kept off-heap (in a slab region, as with ServerOffHeapState).
+     */
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private Env env;
+    private Table table;
+    private SplittableRandom random;
+
+    @Setup
+    public void setup() {
+        env = Benchmarks.shaped(shape);
+        table = offHeap ? new Table(env, new StateSlab(env.config, 1).allocate()) : new Table(env);
+        random = env.util.randomStream(0);
+    }
+
+    @Benchmark
+    public int placeAndRemoveCard() {
+        int slot = random.nextInt(env.config.tableSize);
+        table.placeCard(random.nextInt(env.config.deckSize), slot);
+        table.removeCard(slot);
+        return slot;
+    }
+}
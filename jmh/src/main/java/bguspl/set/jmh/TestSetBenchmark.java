@@ -0,0 +1,58 @@
+package bguspl.set.jmh;
+
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmarks of UtilImpl.testSet, the check of every claim.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestSetBenchmark {
+
+    /**
+     * The feature size and the feature count.
+     */
+    @Param({"3x3", "3x4", "4x4"})
+    public String shape;
+
+    private Env env;
+    private int[] set;
+    private int[] notSet;
+
+    @Setup
+    public void setup() {
+        env = Benchmarks.shaped(shape);
+        // the first featureSize cards differ in the last feature only, so they are a set
+        set = IntStream.range(0, env.config.featureSize).toArray();
+        notSet = set.clone();
+        notSet[notSet.length - 1] = notSet.length;
+    }
+
+    @Benchmark
+    public boolean set() {
+        return env.util.testSet(set);
+    }
+
+    @Benchmark
+    public boolean notSet() {
+        return env.util.testSet(notSet);
+    }
+}
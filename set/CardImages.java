@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+
+/**
+ * This class provides the card images, rendered at cell size into images compatible with the screen.
+ * If the whole deck fits in config.cardCacheSize, all the images are decoded in parallel in the background as soon as
+ * the object is created and a card that is not ready yet is waited for when first placed. Otherwise, images are
+ * loaded on first use and the least recently used ones are evicted.
+ * The images are read from the png resources, or from a prebuilt atlas file (config.cardAtlas) which is memory-mapped
+ * and sliced into the card images (see main for building one).
+ */
+public class CardImages {
+
+    private static final int ATLAS_MAGIC = 0x53455441; // "SETA"
+    private static final int ATLAS_HEADER_BYTES = 16;
+
+    private final Config config;
+    private final GraphicsConfiguration gc;
+    private final Image emptyCard;
+
+    /**
+     * The atlas pixels (ARGB, card after card, the empty card last) or null if the png resources are used.
+     */
+    private final IntBuffer atlas;
+    private final int atlasWidth;
+    private final int atlasHeight;
+
+    /**
+     * The images decoding in the background (null if the images are loaded on first use).
+     */
+    private final List<CompletableFuture<Image>> preloaded;
+
+    /**
+     * The least recently used cache of the images loaded on first use.
+     */
+    private final Map<Integer, Image> cache;
+
+    public CardImages(Logger logger, Config config) {
+        this.config = config;
+        gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+        IntBuffer pixels = null;
+        int width = 0, height = 0;
+        if (!config.cardAtlas.isEmpty()) {
+            try (FileChannel channel = FileChannel.open(Paths.get(config.cardAtlas), StandardOpenOption.READ)) {
+                if (channel.size() < ATLAS_HEADER_BYTES) throw new IOException("atlas is truncated");
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (mapped.getInt(0) != ATLAS_MAGIC || mapped.getInt(4) != config.deckSize + 1)
+                    throw new IOException("atlas does not match the deck");
+                width = mapped.getInt(8);
+                height = mapped.getInt(12);
+                if (width <= 0 || height <= 0) throw new IOException("invalid atlas image size " + width + "x" + height);
+                if (channel.size() != ATLAS_HEADER_BYTES + 4L * width * height * (config.deckSize + 1))
+                    throw new IOException("atlas size " + channel.size() + " does not match its header");
+                pixels = mapped.position(ATLAS_HEADER_BYTES).slice().asIntBuffer();
+            } catch (IOException | RuntimeException e) {
+                logger.severe("cannot use card atlas " + config.cardAtlas + ": " + e.getMessage() + " loading png files.");
+                pixels = null;
+            }
+        }
+        atlas = pixels;
+        atlasWidth = width;
+        atlasHeight = height;
+        emptyCard = load(config.deckSize);
+
+        // the cache holds at least the cards of a full table, or filling the table would evict the cards just loaded
+        int cacheSize = Math.max(config.cardCacheSize, config.tableSize);
+        if (config.cardCacheSize <= 0 || config.deckSize <= cacheSize) {
+            cache = null;
+            preloaded = new ArrayList<>(config.deckSize);
+            for (int i = 0; i < config.deckSize; ++i) {
+                int card = i;
+                preloaded.add(CompletableFuture.supplyAsync(() -> load(card)));
+            }
+        } else {
+            preloaded = null;
+            cache = Collections.synchronizedMap(new LinkedHashMap<Integer, Image>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return - the image of an empty slot.
+     */
+    public Image emptyCard() {
+        return emptyCard;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the image of the card.
+     */
+    public Image card(int card) {
+        if (preloaded != null) return preloaded.get(card).join();
+        Image image = cache.get(card);
+        if (image == null) {
+            image = load(card);
+            cache.put(card, image);
+        }
+        return image;
+    }
+
+    private static String resourceName(Config config, int card) {
+        if (card == config.deckSize) return "cards/empty_card.png";
+        return "cards/" + UserInterfaceSwing.intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
+    }
+
+    private static BufferedImage decode(Config config, int card) {
+        String filename = resourceName(config, card);
+        URL imageResource = CardImages.class.getClassLoader().getResource(filename);
+        try {
+            if (imageResource == null) throw new FileNotFoundException(filename);
+            return ImageIO.read(imageResource);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads a card image (the empty card if card == config.deckSize) and renders it at cell size.
+     */
+    private Image load(int card) {
+        Image source;
+        if (atlas != null) {
+            BufferedImage slice = new BufferedImage(atlasWidth, atlasHeight, BufferedImage.TYPE_INT_ARGB);
+            int[] data = ((DataBufferInt) slice.getRaster().getDataBuffer()).getData();
+            atlas.get(card * atlasWidth * atlasHeight, data);
+            source = slice;
+        } else
+            source = decode(config, card);
+
+        BufferedImage rendered = gc.createCompatibleImage(config.cellWidth, config.cellHeight, Transparency.TRANSLUCENT);
+        Graphics2D g = rendered.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, config.cellWidth, config.cellHeight, null);
+        g.dispose();
+        return rendered;
+    }
+
+    /**
+     * Builds a card atlas file from the png resources, at the cell size of the configuration.
+     *
+     * @param args - the configuration file name and the atlas file name.
+     */
+    public static void main(String[] args) throws IOException {
+        Logger logger = Logger.getLogger("SetAtlasLogger");
+        Config config = new Config(logger, args[0]);
+        Path path = Paths.get(args[1]);
+        int width = config.cellWidth, height = config.cellHeight;
+        try (DataOutputStream out = new DataOutputStream(new java.io.BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(ATLAS_MAGIC);
+            out.writeInt(config.deckSize + 1);
+            out.writeInt(width);
+            out.writeInt(height);
+            int[] pixels = new int[width * height];
+            for (int card = 0; card <= config.deckSize; ++card) {
+                BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = scaled.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(decode(config, card), 0, 0, width, height, null);
+                g.dispose();
+                scaled.getRGB(0, 0, width, height, pixels, 0, width);
+                for (int pixel : pixels) out.writeInt(pixel);
+            }
+        }
+        System.out.println("wrote " + (config.deckSize + 1) + " card images to " + path);
+    }
+}
@@ -0,0 +1,120 @@
+package bguspl.set;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class aggregates the latencies of set claims, from the key press completing a set to the dealer's verdict,
+ * per player and for all players together.
+ * A histogram takes about 9 KB, so each one is only created when its first latency is recorded: a game that saw no
+ * claims yet (or a player that made none) costs nothing but the empty tables.
+ */
+public class ClaimLatencies {
+
+    /**
+     * The stages of a claim.
+     */
+    public enum Stage {
+        /**
+         * From the key press that completed the set until the claim entered the dealer's queue.
+         */
+        INPUT,
+        /**
+         * From entering the dealer's queue until the dealer took the claim (queueing delay).
+         */
+        QUEUE,
+        /**
+         * From the dealer taking the claim until the verdict was delivered to the player.
+         */
+        VALIDATION,
+        /**
+         * From the verdict of a legal set until its cards were replaced on the table.
+         */
+        REFILL,
+        /**
+         * From the key press that completed the set until the verdict was delivered to the player.
+         */
+        TOTAL
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    /**
+     * An empty histogram standing for the ones not created yet (nothing is ever recorded in it).
+     */
+    private static final LatencyHistogram EMPTY = new LatencyHistogram();
+
+    /**
+     * The histograms of all players together and of each player, stage after stage (null until first recorded).
+     */
+    private final AtomicReferenceArray<LatencyHistogram> histograms;
+
+    /**
+     * @param players - the number of players.
+     */
+    public ClaimLatencies(int players) {
+        histograms = new AtomicReferenceArray<>((players + 1) * STAGES.length);
+    }
+
+    private LatencyHistogram histogram(int index) {
+        LatencyHistogram h = histograms.get(index);
+        if (h == null && !histograms.compareAndSet(index, null, h = new LatencyHistogram()))
+            h = histograms.get(index);
+        return h;
+    }
+
+    private LatencyHistogram recorded(int index) {
+        LatencyHistogram h = histograms.get(index);
+        return h == null ? EMPTY : h;
+    }
+
+    /**
+     * Records the latency of a stage of a claim.
+     *
+     * @param player - the id of the player that made the claim.
+     * @param stage  - the stage.
+     * @param nanos  - the latency of the stage.
+     */
+    public void record(int player, Stage stage, long nanos) {
+        histogram((player + 1) * STAGES.length + stage.ordinal()).record(nanos);
+        histogram(stage.ordinal()).record(nanos);
+    }
+
+    /**
+     * @param player - the player id.
+     * @param stage  - the stage.
+     * @return - the histogram of the stage for the player (not to be recorded in directly).
+     */
+    public LatencyHistogram player(int player, Stage stage) {
+        return recorded((player + 1) * STAGES.length + stage.ordinal());
+    }
+
+    /**
+     * @param stage - the stage.
+     * @return - the histogram of the stage for all players (not to be recorded in directly).
+     */
+    public LatencyHistogram global(Stage stage) {
+        return recorded(stage.ordinal());
+    }
+
+    /**
+     * Generates a report of all stages, for all players and for each player separately (in microseconds).
+     *
+     * @param names - the names of the players.
+     * @return - the report text.
+     */
+    public String report(String[] names) {
+        StringBuilder sb = new StringBuilder("claim latencies (us):");
+        for (int i = 0; i < histograms.length() / STAGES.length; ++i) {
+            String name = i == 0 ? "all players" : names[i - 1];
+            for (Stage stage : STAGES) {
+                LatencyHistogram h = recorded(i * STAGES.length + stage.ordinal());
+                if (h.count() == 0) continue;
+                sb.append(String.format(Locale.ROOT, "%n  %-12s %-10s count: %6d mean: %10.1f p50: %10.1f p99: %10.1f max: %10.1f",
+                        name, stage.name().toLowerCase(Locale.ROOT), h.count(), h.mean() / 1000.0,
+                        h.percentile(50) / 1000.0, h.percentile(99) / 1000.0, h.max() / 1000.0));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -21,6 +22,119 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The seed of the game's random number generators (identical seeds and bot schedules deal identical cards)
+     */
+    public final long seed;
+
+    /**
+     * Whether to emit the game's custom flight recorder events (see GameEvents)
+     */
+    public final boolean jfrEvents;
+
+    /**
+     * The number of milliseconds between thread telemetry reports (0 reports only at thread termination, -1 disables, the default)
+     */
+    public final long threadStatsMillis;
+
+    /**
+     * The local port of the metrics endpoint (0 disables it)
+     */
+    public final int metricsPort;
+
+    /**
+     * The number of records in the asynchronous game event log buffer (0 logs the game events synchronously)
+     */
+    public final int eventLogCapacity;
+
+    /**
+     * Whether game events are dropped (true) or the game waits (false) when the event log buffer is full
+     */
+    public final boolean eventLogLossy;
+
+    /**
+     * Whether the user interface is driven through the game event bus (as one subscriber among many, it always is when
+     * journaling or broadcasting to spectators)
+     */
+    public final boolean eventBus;
+
+    /**
+     * What to do when the user interface falls behind the event bus (BLOCK, DROP or CONFLATE, see GameEventBus)
+     */
+    public final GameEventBus.Policy uiEventPolicy;
+
+    /**
+     * The size of each event bus subscriber's buffer and the maximal number of events delivered to it in one batch
+     */
+    public final int eventBufferSize;
+    public final int eventBatchSize;
+
+    /**
+     * The directory the binary game journal is written to (see GameJournal), empty for no journal
+     */
+    public final String journalDirectory;
+
+    /**
+     * The size of each journal segment file in bytes
+     */
+    public final int journalSegmentBytes;
+
+    /**
+     * The file the dealer keeps a snapshot of the game in (see GameSnapshot), empty for no snapshots
+     */
+    public final String snapshotFile;
+
+    /**
+     * The minimal number of milliseconds between two snapshots (0 takes one after every point and every deal)
+     */
+    public final long snapshotIntervalMillis;
+
+    /**
+     * Whether to resume the game from the snapshot file (if there is one) instead of starting a new game
+     */
+    public final boolean resume;
+
+    /**
+     * The file of the persistent leaderboard the results of each game are added to (see Leaderboard), empty for none
+     */
+    public final String leaderboardFile;
+
+    /**
+     * The maximal number of players in the leaderboard (the size of a new leaderboard file)
+     */
+    public final int leaderboardCapacity;
+
+    /**
+     * The limits of the game server (see GameServer): the number of games it hosts at once, the number of players in
+     * each game and the number of milliseconds a game may run for (0 for no limit)
+     */
+    public final int serverMaxSessions;
+    public final int serverMaxPlayers;
+    public final long serverMaxGameMillis;
+
+    /**
+     * Whether the game server keeps the tables and the decks of its games off-heap (see StateSlab)
+     */
+    public final boolean serverOffHeapState;
+
+    /**
+     * The local port remote players connect to (see InputServer, 0 disables it)
+     */
+    public final int inputServerPort;
+
+    /**
+     * The number of key presses per second each remote connection may send (0 for no limit) and the largest burst
+     */
+    public final double inputRateLimit;
+    public final int inputRateBurst;
+
+    /**
+     * The local port spectators connect to (see SpectatorServer, 0 disables it) and the number of updates they get
+     * per second
+     */
+    public final int spectatorPort;
+    public final int spectatorFps;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -66,6 +180,18 @@ public class Config {
      */
     public final long turnTimeoutWarningMillis;
 
+    /**
+     * The number of milliseconds the dealer waits before reshuffling a table with no set on it (0 reshuffles at once,
+     * negative waits for the turn timeout)
+     */
+    public final long deadTableGraceMillis;
+
+    /**
+     * How the dealer draws cards from the deck: "random" or "guaranteed" (deals a set whenever the table has none and
+     * the deck allows, see GuaranteedDealing)
+     */
+    public final String dealingStrategy;
+
     /**
      * The number of milliseconds a player gets frozen for when he scores a point
      */
@@ -132,6 +258,34 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The maximal number of card images kept in memory (0 for no limit, and never fewer than the table holds); if the
+     * deck is larger, images are loaded on first use instead of all in parallel at startup
+     */
+    public final int cardCacheSize;
+
+    /**
+     * The file name of a prebuilt card image atlas (see CardImages), empty to load the png files
+     */
+    public final String cardAtlas;
+
+    /**
+     * The user interface implementation: "swing" (a component per cell and player), "canvas" (for big tables and
+     * many players, see UserInterfaceCanvas), "headless" (no display and no logging of the display updates) or
+     * "recording" (headless, recording the display updates, see UserInterfaceHeadless)
+     */
+    public final String userInterface;
+
+    /**
+     * The maximal number of display updates recorded by the recording user interface
+     */
+    public final int recordingCapacity;
+
+    /**
+     * The number of frames per second the user interface is updated at (0 updates it directly from the game threads)
+     */
+    public final int uiFps;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -187,12 +341,69 @@ public class Config {
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
 
+        eventLogCapacity = Integer.parseInt(properties.getProperty("EventLogCapacity", "8192"));
+        String eventLogPolicy = properties.getProperty("EventLogPolicy", "lossless").trim();
+        eventLogLossy = eventLogPolicy.equalsIgnoreCase("lossy");
+        if (!eventLogLossy && !eventLogPolicy.equalsIgnoreCase("lossless"))
+            logger.severe("invalid event log policy: " + eventLogPolicy + " using lossless.");
+
+        // event bus settings
+        eventBus = Boolean.parseBoolean(properties.getProperty("EventBus", "False"));
+        String uiPolicy = properties.getProperty("UiEventPolicy", "CONFLATE").trim();
+        GameEventBus.Policy policy = GameEventBus.Policy.CONFLATE;
+        try {
+            policy = GameEventBus.Policy.valueOf(uiPolicy.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.severe("invalid ui event policy: " + uiPolicy + " using CONFLATE.");
+        }
+        uiEventPolicy = policy;
+        eventBufferSize = Integer.parseInt(properties.getProperty("EventBufferSize", Integer.toString(GameEventBus.DEFAULT_CAPACITY)));
+        eventBatchSize = Integer.parseInt(properties.getProperty("EventBatchSize", Integer.toString(GameEventBus.DEFAULT_BATCH)));
+
+        // journal settings
+        journalDirectory = properties.getProperty("JournalDirectory", "").trim();
+        journalSegmentBytes = Integer.parseInt(properties.getProperty("JournalSegmentBytes", "1048576"));
+
+        // snapshot settings
+        snapshotFile = properties.getProperty("SnapshotFile", "").trim();
+        snapshotIntervalMillis = (long) (Double.parseDouble(properties.getProperty("SnapshotIntervalSeconds", "1")) * 1000.0);
+        resume = Boolean.parseBoolean(properties.getProperty("Resume", "False"));
+
+        // leaderboard settings
+        leaderboardFile = properties.getProperty("LeaderboardFile", "").trim();
+        leaderboardCapacity = Integer.parseInt(properties.getProperty("LeaderboardCapacity", "4096"));
+
+        // game server settings
+        serverMaxSessions = Integer.parseInt(properties.getProperty("ServerMaxSessions", "256"));
+        serverMaxPlayers = Integer.parseInt(properties.getProperty("ServerMaxPlayers", "8"));
+        serverMaxGameMillis = (long) (Double.parseDouble(properties.getProperty("ServerMaxGameSeconds", "0")) * 1000.0);
+        serverOffHeapState = Boolean.parseBoolean(properties.getProperty("ServerOffHeapState", "False"));
+
+        // remote input settings
+        inputServerPort = Integer.parseInt(properties.getProperty("InputServerPort", "0"));
+        inputRateLimit = Double.parseDouble(properties.getProperty("InputRateLimit", "20"));
+        inputRateBurst = Integer.parseInt(properties.getProperty("InputRateBurst", "10"));
+
+        // spectator settings
+        spectatorPort = Integer.parseInt(properties.getProperty("SpectatorPort", "0"));
+        spectatorFps = Integer.parseInt(properties.getProperty("SpectatorFps", "30"));
+
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
         randomSpinMax = Long.parseLong(properties.getProperty("RandomSpinMax", "0"));
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
+        // random settings
+        String seedString = properties.getProperty("Seed", "").trim();
+        seed = seedString.isEmpty() ? System.nanoTime() : Long.parseLong(seedString);
+        logger.info("random seed: " + seed);
+
+        // telemetry settings
+        jfrEvents = Boolean.parseBoolean(properties.getProperty("JfrEvents", "False"));
+        threadStatsMillis = (long) (Double.parseDouble(properties.getProperty("ThreadStatsSeconds", "-1")) * 1000.0);
+        metricsPort = Integer.parseInt(properties.getProperty("MetricsPort", "0"));
+
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
@@ -206,6 +417,8 @@ public class Config {
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
+        deadTableGraceMillis = (long) (Double.parseDouble(properties.getProperty("DeadTableGraceSeconds", "0")) * 1000.0);
+        dealingStrategy = properties.getProperty("DealingStrategy", "random").trim().toLowerCase(Locale.ROOT);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
@@ -224,6 +437,11 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        userInterface = properties.getProperty("UserInterface", "swing").trim().toLowerCase(Locale.ROOT);
+        recordingCapacity = Integer.parseInt(properties.getProperty("RecordingCapacity", "1000000"));
+        uiFps = Integer.parseInt(properties.getProperty("UiFps", "60"));
+        cardCacheSize = Integer.parseInt(properties.getProperty("CardCacheSize", "256"));
+        cardAtlas = properties.getProperty("CardAtlas", "").trim();
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
@@ -8,11 +8,27 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final ClaimLatencies latencies;
+    public final GameMetrics metrics;
+    public final GameEventBus bus;
+    public final Leaderboard leaderboard;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new GameEventBus());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameEventBus bus) {
+        this(logger, config, ui, util, bus, null);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, GameEventBus bus, Leaderboard leaderboard) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.latencies = new ClaimLatencies(config.players);
+        this.metrics = new GameMetrics();
+        this.bus = bus;
+        this.leaderboard = leaderboard;
     }
 }
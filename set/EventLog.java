@@ -0,0 +1,217 @@
+package bguspl.set;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * An asynchronous logger for the frequent game events (cards, tokens, timer, key presses).
+ * Game threads write fixed-size binary records (time, type and two numbers) into a preallocated ring buffer, and a
+ * background writer thread formats them and passes them on to the logger. The level is checked before anything is
+ * written, so filtered events cost nothing, and nothing is formatted on the game threads.
+ * When the buffer is full, the lossless policy makes the game thread wait for room and the lossy policy drops the event
+ * (and counts it).
+ */
+public class EventLog {
+
+    /**
+     * The logged event types.
+     */
+    public enum Type {
+        CARD_PLACED(Level.SEVERE, "placing card ", " in slot ", 2),
+        CARD_REMOVED(Level.SEVERE, "removing card from slot ", "", 1),
+        TOKEN_PLACED(Level.SEVERE, "player ", " placing token on slot ", 2),
+        TOKENS_REMOVED(Level.SEVERE, "removing all tokens", "", 0),
+        SLOT_TOKENS_REMOVED(Level.SEVERE, "removing tokens from slot ", "", 1),
+        TOKEN_REMOVED(Level.SEVERE, "removing player ", " token from slot ", 2),
+        COUNTDOWN(Level.SEVERE, "updating countdown to ", "", 1),
+        ELAPSED(Level.SEVERE, "updating elapsed time to ", "", 1),
+        FREEZE(Level.SEVERE, "setting player ", " freeze to ", 2),
+        SCORE(Level.SEVERE, "setting player ", " score to ", 2),
+        KEY_PRESSED(Level.SEVERE, "key ", " was pressed by player ", 2);
+
+        final Level level;
+        final String prefix;
+        final String infix;
+        final int args;
+
+        Type(Level level, String prefix, String infix, int args) {
+            this.level = level;
+            this.prefix = prefix;
+            this.infix = infix;
+            this.args = args;
+        }
+    }
+
+    private static final Type[] types = Type.values();
+
+    private final Logger logger;
+    private final boolean lossy;
+    private final int mask;
+
+    // the ring buffer: one record per index, published once sequence[index] holds the record's sequence number
+    private final long[] times;
+    private final int[] typeOrdinals;
+    private final long[] firstArgs;
+    private final long[] secondArgs;
+    private final AtomicLongArray sequence;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * True while the writer thread is parked (or about to park) on an empty buffer, waiting to be unparked by log.
+     */
+    private volatile boolean sleeping;
+
+    /**
+     * @param logger - the logger to write to.
+     * @param config - the game configuration (the capacity of the buffer, 0 for synchronous logging, and the policy).
+     */
+    public EventLog(Logger logger, Config config) {
+        this.logger = logger;
+        this.lossy = config.eventLogLossy;
+        int capacity = config.eventLogCapacity <= 0 ? 0 : Integer.highestOneBit(Math.max(config.eventLogCapacity, 2) - 1) << 1;
+        mask = Math.max(capacity, 1) - 1;
+        times = new long[capacity];
+        typeOrdinals = new int[capacity];
+        firstArgs = new long[capacity];
+        secondArgs = new long[capacity];
+        sequence = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; ++i)
+            sequence.set(i, -1);
+
+        if (capacity == 0) {
+            writer = null;
+            closed = true;
+        } else {
+            writer = new Thread(this::write, "event-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Logs an event with no arguments.
+     */
+    public void log(Type type) {
+        log(type, 0, 0);
+    }
+
+    /**
+     * Logs an event with one argument.
+     */
+    public void log(Type type, long a) {
+        log(type, a, 0);
+    }
+
+    /**
+     * Logs an event.
+     *
+     * @param type - the event type.
+     * @param a    - the first argument.
+     * @param b    - the second argument.
+     */
+    public void log(Type type, long a, long b) {
+        if (!logger.isLoggable(type.level)) return;
+        long time = System.currentTimeMillis();
+        if (closed) {
+            publish(time, type, a, b, new StringBuilder());
+            return;
+        }
+
+        long seq;
+        while (true) {
+            seq = head.get();
+            if (seq - tail.get() > mask) { // full
+                if (lossy) {
+                    dropped.increment();
+                    return;
+                }
+                if (closed) {
+                    publish(time, type, a, b, new StringBuilder());
+                    return;
+                }
+                LockSupport.parkNanos(10_000L);
+            } else if (head.compareAndSet(seq, seq + 1))
+                break;
+        }
+        int index = (int) (seq & mask);
+        times[index] = time;
+        typeOrdinals[index] = type.ordinal();
+        firstArgs[index] = a;
+        secondArgs[index] = b;
+        sequence.set(index, seq); // a full fence, so either the writer sees the record or we see it sleeping
+        if (sleeping) LockSupport.unpark(writer);
+    }
+
+    /**
+     * @return - the number of events dropped because the buffer was full (lossy policy only).
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes out all the events logged so far and stops the writer thread. Events logged afterwards are written
+     * synchronously.
+     */
+    public void close() {
+        if (writer == null) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ignored) {
+        }
+        // events published while the writer was stopping
+        StringBuilder sb = new StringBuilder(64);
+        for (long next = tail.get(); next < head.get() && sequence.get((int) (next & mask)) == next; ++next) {
+            int index = (int) (next & mask);
+            publish(times[index], types[typeOrdinals[index]], firstArgs[index], secondArgs[index], sb);
+        }
+        if (dropped.sum() > 0) logger.warning("event log dropped " + dropped.sum() + " events");
+    }
+
+    /**
+     * The main loop of the writer thread.
+     */
+    private void write() {
+        StringBuilder sb = new StringBuilder(64);
+        long next = tail.get();
+        while (true) {
+            int index = (int) (next & mask);
+            if (sequence.get(index) == next) {
+                publish(times[index], types[typeOrdinals[index]], firstArgs[index], secondArgs[index], sb);
+                tail.lazySet(++next);
+            } else if (closed && next == head.get()) {
+                return;
+            } else {
+                // sleep until an event is logged or the log is closed, checking again after announcing it
+                sleeping = true;
+                if (sequence.get(index) != next && !closed) LockSupport.park(this);
+                sleeping = false;
+            }
+        }
+    }
+
+    private void publish(long time, Type type, long a, long b, StringBuilder sb) {
+        sb.setLength(0);
+        sb.append(type.prefix);
+        if (type.args > 0) sb.append(a).append(type.infix);
+        if (type.args > 1) sb.append(b);
+        LogRecord record = new LogRecord(type.level, sb.toString());
+        record.setInstant(Instant.ofEpochMilli(time));
+        record.setLoggerName(logger.getName());
+        logger.log(record);
+    }
+}
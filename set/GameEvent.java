@@ -0,0 +1,81 @@
+package bguspl.set;
+
+/**
+ * An event published on the game event bus: either a display update (mirroring the UserInterface methods) or a game
+ * action (key presses, claims, verdicts and reshuffles).
+ */
+public final class GameEvent {
+
+    public enum Type {
+        CARD_PLACED,        // card, slot
+        CARD_REMOVED,       // slot
+        TOKEN_PLACED,       // player, slot
+        TOKENS_REMOVED,     // -
+        SLOT_TOKENS_REMOVED, // slot
+        TOKEN_REMOVED,      // player, slot
+        COUNTDOWN,          // value: millies, card: 1 if warn
+        ELAPSED,            // value: millies
+        FREEZE,             // player, value: millies
+        SCORE,              // player, value: score
+        WINNERS,            // cards: the winners
+        DISPOSE,            // -
+        KEY_PRESSED,        // player, slot (only presses accepted into the player's queue)
+        CLAIM,              // player, cards: the claimed cards
+        VERDICT,            // player, value: 1 for a point, 0 for a penalty, -1 if a card was no longer on the table
+        RESHUFFLE           // value: the number of cards returned to the deck
+    }
+
+    public final Type type;
+    public final int player;
+    public final int slot;
+    public final int card;
+    public final long value;
+    public final int[] cards;
+
+    /**
+     * The time the event was published (System.nanoTime).
+     */
+    public final long nanos;
+
+    private GameEvent(Type type, int player, int slot, int card, long value, int[] cards) {
+        this.type = type;
+        this.player = player;
+        this.slot = slot;
+        this.card = card;
+        this.value = value;
+        this.cards = cards;
+        this.nanos = System.nanoTime();
+    }
+
+    public static GameEvent of(Type type, int player, int slot, int card, long value) {
+        return new GameEvent(type, player, slot, card, value, null);
+    }
+
+    public static GameEvent of(Type type, int player, int[] cards) {
+        return new GameEvent(type, player, -1, -1, 0, cards);
+    }
+
+    /**
+     * Events with the same non negative key supersede each other (only the latest one matters).
+     *
+     * @return - the conflation key of the event, or -1 if every event of this type matters.
+     */
+    public int conflationKey() {
+        switch (type) {
+            case COUNTDOWN:
+            case ELAPSED:
+                return 0;
+            case FREEZE:
+                return 1 + player * 2;
+            case SCORE:
+                return 2 + player * 2;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + "[player=" + player + ", slot=" + slot + ", card=" + card + ", value=" + value + "]";
+    }
+}
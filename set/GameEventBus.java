@@ -0,0 +1,442 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A publish/subscribe bus of game events.
+ * Every subscriber gets its own bounded buffer and its own overflow policy, and events are delivered to it in
+ * batches by a shared pool of delivery threads, so a slow subscriber never delays the others and only delays the
+ * publishing game thread if it asked for the BLOCK policy.
+ * Every subscriber gets the events in the order their places were reserved (see reserve), so a game thread can fix the
+ * order of an event under one of its locks and publish it, possibly waiting for a full buffer, after releasing the
+ * lock (see defer). Each subscription orders the events offered to it on its own, and the subscriptions that never
+ * block are offered each event first, so a slow BLOCK subscriber holds back its own events only.
+ */
+public class GameEventBus implements Flow.Publisher<GameEvent> {
+
+    /**
+     * What to do with an event published to a subscriber whose buffer is full.
+     */
+    public enum Policy {
+        /**
+         * Discard the event (and count it).
+         */
+        DROP,
+        /**
+         * Make the publishing thread wait for room.
+         */
+        BLOCK,
+        /**
+         * Replace a pending event with the same conflation key (even if the buffer is not full); events that cannot
+         * be conflated wait for room as with BLOCK.
+         */
+        CONFLATE
+    }
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH = 64;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The delivery threads (created with the first delivery, as most buses of a game server never get a subscriber).
+     */
+    private ExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * The next place in the order of the events.
+     */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * The events each thread published while deferring (see defer).
+     */
+    private final ThreadLocal<Deferred> deferred = ThreadLocal.withInitial(Deferred::new);
+
+    /**
+     * The number of events dropped by subscriptions with the DROP policy.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @return - true iff anyone is subscribed (publishers may skip creating events otherwise).
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Publishes an event to all the subscribers.
+     *
+     * @param event - the event.
+     */
+    public void publish(GameEvent event) {
+        publish(reserve(), event);
+    }
+
+    /**
+     * Reserves the place of an event in the order of the events. Every reserved place must be published (see
+     * publish(long, GameEvent)), and no lock may be taken between the two that a publisher can hold while publishing.
+     *
+     * @return - the place.
+     */
+    public long reserve() {
+        return reserved.getAndIncrement();
+    }
+
+    /**
+     * Publishes an event to all the subscribers at a reserved place: each subscriber gets it once it got the events
+     * before it. If the calling thread is deferring, the event is only published by flush.
+     *
+     * @param place - the place reserved for the event.
+     * @param event - the event.
+     */
+    public void publish(long place, GameEvent event) {
+        Deferred pending = deferred.get();
+        if (pending.depth > 0) {
+            pending.add(place, event);
+            return;
+        }
+        for (Subscription subscription : subscriptions)
+            subscription.offer(place, event);
+    }
+
+    /**
+     * Makes the calling thread reserve the places of the events it publishes, and publish them only when it calls
+     * flush (calls nest). Used around code that publishes while holding a game lock, so that no game thread waits for
+     * a subscriber while holding the lock.
+     */
+    public void defer() {
+        ++deferred.get().depth;
+    }
+
+    /**
+     * Publishes the events deferred by the calling thread (see defer), once it left the outermost deferring code.
+     */
+    public void flush() {
+        Deferred pending = deferred.get();
+        if (--pending.depth > 0) return;
+        pending.sort();
+        try {
+            for (int i = 0; i < pending.size; ++i)
+                for (Subscription subscription : subscriptions)
+                    subscription.offer(pending.places[i], pending.events[i]);
+        } finally {
+            pending.clear();
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber) {
+        subscribe(subscriber, Policy.BLOCK, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    /**
+     * Subscribes with a specific buffer and policy.
+     *
+     * @param subscriber - the subscriber.
+     * @param policy     - what to do when the subscriber's buffer is full.
+     * @param capacity   - the size of the subscriber's buffer.
+     * @param batch      - the maximal number of events delivered in a row before yielding the delivery thread.
+     */
+    public void subscribe(Flow.Subscriber<? super GameEvent> subscriber, Policy policy, int capacity, int batch) {
+        Subscription subscription = new Subscription(subscriber, policy, Math.max(1, capacity), Math.max(1, batch));
+        subscription.lock.lock();
+        try {
+            // the subscriber gets the events from the first place reserved after it is visible to the publishers
+            if (policy == Policy.BLOCK) subscriptions.add(subscription);
+            else subscriptions.add(0, subscription);
+            subscription.next = reserved.get();
+        } finally {
+            subscription.lock.unlock();
+        }
+        subscriber.onSubscribe(subscription);
+        if (closed) subscription.complete();
+    }
+
+    /**
+     * @return - the total number of events dropped by all subscriptions.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Delivers the pending events, completes all the subscribers and stops the delivery threads.
+     *
+     * @param timeoutMillis - how long to wait for the subscribers to consume their pending events.
+     */
+    public void close(long timeoutMillis) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Subscription subscription : subscriptions)
+            subscription.complete();
+        try {
+            for (Subscription subscription : subscriptions)
+                subscription.completed.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+        }
+        synchronized (subscriptions) {
+            if (executor != null) executor.shutdown();
+        }
+    }
+
+    /**
+     * @return - the delivery threads (null if the bus is closed before any delivery).
+     */
+    private ExecutorService executor() {
+        synchronized (subscriptions) {
+            if (executor == null && !closed)
+                executor = Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "event-bus");
+                    t.setDaemon(true);
+                    return t;
+                });
+            return executor;
+        }
+    }
+
+    /**
+     * The events a thread published while deferring, with their places.
+     */
+    private static final class Deferred {
+        int depth;
+        int size;
+        long[] places = new long[8];
+        GameEvent[] events = new GameEvent[8];
+
+        void add(long place, GameEvent event) {
+            if (size == places.length) {
+                places = Arrays.copyOf(places, size * 2);
+                events = Arrays.copyOf(events, size * 2);
+            }
+            places[size] = place;
+            events[size++] = event;
+        }
+
+        /**
+         * Sorts the events by place (a thread may publish the places it reserved out of order).
+         */
+        void sort() {
+            for (int i = 1; i < size; ++i) {
+                long place = places[i];
+                GameEvent event = events[i];
+                int j = i - 1;
+                for (; j >= 0 && places[j] > place; --j) {
+                    places[j + 1] = places[j];
+                    events[j + 1] = events[j];
+                }
+                places[j + 1] = place;
+                events[j + 1] = event;
+            }
+        }
+
+        void clear() {
+            Arrays.fill(events, 0, size, null);
+            size = 0;
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super GameEvent> subscriber;
+        private final Policy policy;
+        private final int batch;
+
+        // the bounded buffer (guarded by lock)
+        private final GameEvent[] ring;
+        private int head;
+        private int count;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+
+        // the place of the next event to queue, and the publishers waiting for their place to come (guarded by lock)
+        private long next;
+        private final Condition turn = lock.newCondition();
+
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean completing;
+        private volatile boolean cancelled;
+
+        private Subscription(Flow.Subscriber<? super GameEvent> subscriber, Policy policy, int capacity, int batch) {
+            this.subscriber = subscriber;
+            this.policy = policy;
+            this.batch = batch;
+            ring = new GameEvent[capacity];
+        }
+
+        /**
+         * Queues an event once the events of the places before it are queued (events of places before the
+         * subscription are ignored).
+         */
+        private void offer(long place, GameEvent event) {
+            boolean queued = false;
+            lock.lock();
+            try {
+                while (place > next && !cancelled && !completing)
+                    turn.awaitUninterruptibly();
+                if (place < next || cancelled || completing) return;
+                try {
+                    queued = enqueue(event);
+                } finally {
+                    ++next;
+                    turn.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (queued) schedule();
+        }
+
+        /**
+         * Adds an event to the buffer, applying the policy (called with the lock held).
+         *
+         * @return - true iff the event was added (false if it was conflated or dropped).
+         */
+        private boolean enqueue(GameEvent event) {
+            if (policy == Policy.CONFLATE) {
+                int key = event.conflationKey();
+                if (key >= 0)
+                    for (int i = count - 1; i >= 0; --i) {
+                        int index = (head + i) % ring.length;
+                        if (ring[index].conflationKey() == key) {
+                            ring[index] = event;
+                            return false;
+                        }
+                    }
+            }
+            while (count == ring.length) {
+                if (policy == Policy.DROP) {
+                    dropped.increment();
+                    return false;
+                }
+                notFull.awaitUninterruptibly();
+                if (cancelled || completing) return false;
+            }
+            ring[(head + count) % ring.length] = event;
+            ++count;
+            return true;
+        }
+
+        private GameEvent poll() {
+            lock.lock();
+            try {
+                if (count == 0) return null;
+                GameEvent event = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                --count;
+                notFull.signal();
+                return event;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isEmpty() {
+            lock.lock();
+            try {
+                return count == 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) execute();
+        }
+
+        private void execute() {
+            try {
+                ExecutorService executor = executor();
+                if (executor != null) executor.execute(this);
+            } catch (RejectedExecutionException ignored) { // the bus is closed
+            }
+        }
+
+        private void complete() {
+            completing = true;
+            lock.lock();
+            try {
+                notFull.signalAll();
+                turn.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+
+        /**
+         * Delivers up to a batch of events (only one delivery thread runs this at a time).
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                int delivered = 0;
+                while (delivered < batch && !cancelled && demand.get() > 0) {
+                    GameEvent event = poll();
+                    if (event == null) break;
+                    subscriber.onNext(event);
+                    if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet();
+                    ++delivered;
+                }
+                if (delivered == batch && !cancelled && !isEmpty()) { // let other subscribers use the thread
+                    execute();
+                    return;
+                }
+                if ((completing && isEmpty()) || cancelled) {
+                    if (done.compareAndSet(false, true)) {
+                        subscriptions.remove(this);
+                        if (!cancelled) subscriber.onComplete();
+                        completed.countDown();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+            demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            lock.lock();
+            try {
+                notFull.signalAll();
+                turn.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            schedule();
+        }
+    }
+}
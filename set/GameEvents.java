@@ -0,0 +1,152 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Custom JDK Flight Recorder events of the game.
+ * The events are only created when config.jfrEvents is set, otherwise the factory methods return null (or do nothing)
+ * and the game threads pay nothing but a field read.
+ */
+public final class GameEvents {
+
+    private GameEvents() {
+    }
+
+    @Name("bguspl.set.ClaimEnqueued")
+    @Label("Claim Enqueued")
+    @Description("A player's set claim entered the dealer's queue")
+    @Category("Set Game")
+    @StackTrace(false)
+    public static class ClaimEnqueued extends Event {
+        @Label("Player")
+        public int player;
+    }
+
+    @Name("bguspl.set.ClaimJudged")
+    @Label("Claim Judged")
+    @Description("The dealer checked a set claim and delivered the verdict")
+    @Category("Set Game")
+    @StackTrace(false)
+    public static class ClaimJudged extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Verdict")
+        public String verdict;
+    }
+
+    @Name("bguspl.set.TableRefill")
+    @Label("Table Refill")
+    @Description("The dealer placed cards from the deck on the table")
+    @Category("Set Game")
+    @StackTrace(false)
+    public static class TableRefill extends Event {
+        @Label("Slots")
+        public int slots;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Description("The dealer returned all the cards on the table to the deck")
+    @Category("Set Game")
+    @StackTrace(false)
+    public static class Reshuffle extends Event {
+        @Label("Cards")
+        public int cards;
+    }
+
+    @Name("bguspl.set.PlayerFreeze")
+    @Label("Player Freeze")
+    @Description("A player was frozen after a point or a penalty")
+    @Category("Set Game")
+    @StackTrace(false)
+    public static class PlayerFreeze extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Freeze Millis")
+        public long millis;
+    }
+
+    @Name("bguspl.set.UiDispatch")
+    @Label("UI Dispatch")
+    @Description("A call to the user interface")
+    @Category("Set Game")
+    @StackTrace(false)
+    public static class UiDispatch extends Event {
+        @Label("Method")
+        public String method;
+    }
+
+    public static void claimEnqueued(Config config, int player) {
+        if (!config.jfrEvents) return;
+        ClaimEnqueued event = new ClaimEnqueued();
+        event.player = player;
+        event.commit();
+    }
+
+    /**
+     * @return - a started claim judged event, or null if events are disabled.
+     */
+    public static ClaimJudged claimJudged(Config config) {
+        if (!config.jfrEvents) return null;
+        ClaimJudged event = new ClaimJudged();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return - a started table refill event, or null if events are disabled.
+     */
+    public static TableRefill tableRefill(Config config) {
+        if (!config.jfrEvents) return null;
+        TableRefill event = new TableRefill();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return - a started reshuffle event, or null if events are disabled.
+     */
+    public static Reshuffle reshuffle(Config config) {
+        if (!config.jfrEvents) return null;
+        Reshuffle event = new Reshuffle();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return - a started player freeze event, or null if events are disabled.
+     */
+    public static PlayerFreeze playerFreeze(Config config, int player, long millis) {
+        if (!config.jfrEvents) return null;
+        PlayerFreeze event = new PlayerFreeze();
+        event.player = player;
+        event.millis = millis;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return - a started ui dispatch event, or null if events are disabled.
+     */
+    public static UiDispatch uiDispatch(Config config, String method) {
+        if (!config.jfrEvents) return null;
+        UiDispatch event = new UiDispatch();
+        event.method = method;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends and commits a started event.
+     *
+     * @param event - the event (may be null if events are disabled).
+     */
+    public static void commit(Event event) {
+        if (event != null) event.commit();
+    }
+}
@@ -0,0 +1,392 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Flow;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only binary journal of a game, subscribed to the game event bus (with the BLOCK policy, so that no event
+ * is lost). The records are written to memory-mapped segment files of config.journalSegmentBytes bytes each, so that
+ * appending a record costs no system call; when a segment is full the journal rolls over to the next one.
+ * The records are in the order of their places on the bus, which the game threads take under the game's locks (see
+ * GameEventBus.reserve), so a token follows the press that placed or removed it and every change to the table the
+ * player saw, and a claim precedes its verdict; this is what lets Replay re-apply the presses in their recorded order.
+ * <p>
+ * Every segment starts with a HEADER_BYTES header (the seed and the game settings, see Header) followed by
+ * RECORD_BYTES records:
+ * <pre>
+ *  0: type   (byte, GameEvent.Type ordinal + 1, 0 marks the end of the records)
+ *  1: player (unsigned byte, 255 if none)
+ *  2: slot   (unsigned byte, 255 if none)
+ *  3: card   (unsigned byte)
+ *  4: value  (int, for claims: the claimed cards, one per byte)
+ *  8: nanos  (long, the time of the event relative to the start of the journal)
+ * </pre>
+ * Display-only events (countdown, elapsed time, winners and dispose) are not journaled, and of the freeze updates only
+ * the one starting a freeze is.
+ */
+public class GameJournal implements Flow.Subscriber<GameEvent>, Closeable {
+
+    public static final int MAGIC = 0x5345544A; // "SETJ"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    public static final int RECORD_BYTES = 16;
+
+    private static final int NONE = 0xFF;
+
+    private final Logger logger;
+    private final Config config;
+    private final long seed;
+    private final Path directory;
+    private final long startMillis;
+    private final long startNanos;
+    private final int segmentBytes;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int segment = -1;
+    private long records;
+
+    /**
+     * The last freeze time displayed for each player (only the start of a freeze is journaled).
+     */
+    private final long[] freezes;
+
+    private boolean closed;
+
+    /**
+     * @param logger - the logger.
+     * @param config - the game's configuration.
+     * @param seed   - the seed the game draws from (env.util.seed(), which differs from config.seed for resumed and
+     *                 hosted games).
+     */
+    public GameJournal(Logger logger, Config config, long seed) throws IOException {
+        if (config.tableSize >= NONE || config.players >= NONE || config.deckSize > 256)
+            throw new IllegalArgumentException("the table, the players or the deck do not fit in the journal records");
+        this.logger = logger;
+        this.config = config;
+        this.seed = seed;
+        directory = Paths.get(config.journalDirectory);
+        startMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+        segmentBytes = Math.max(HEADER_BYTES + RECORD_BYTES, config.journalSegmentBytes / RECORD_BYTES * RECORD_BYTES);
+        freezes = new long[config.players];
+        Files.createDirectories(directory);
+        rollOver();
+    }
+
+    /**
+     * @return - the number of records journaled so far.
+     */
+    public long records() {
+        return records;
+    }
+
+    /**
+     * Closes the current segment and maps the next one.
+     */
+    private void rollOver() throws IOException {
+        closeSegment();
+        ++segment;
+        Path path = directory.resolve(String.format("journal-%s-%d-%04d.bin", Long.toUnsignedString(seed), startMillis, segment));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        buffer.putInt(MAGIC).putShort((short) VERSION).putShort((short) RECORD_BYTES);
+        buffer.putLong(seed).putLong(startMillis).putInt(segment);
+        buffer.put((byte) config.featureSize).put((byte) config.featureCount);
+        buffer.put((byte) config.players).put((byte) config.humanPlayers);
+        buffer.putShort((short) config.rows).putShort((short) config.columns).putInt(config.deckSize);
+        buffer.putLong(config.turnTimeoutMillis).putLong(config.pointFreezeMillis).putLong(config.penaltyFreezeMillis);
+        logger.info("journaling to " + path);
+    }
+
+    /**
+     * Flushes the current segment and truncates it to its records.
+     */
+    private void closeSegment() throws IOException {
+        if (channel == null) return;
+        int length = buffer.position();
+        buffer.force();
+        buffer = null;
+        channel.truncate(length);
+        channel.close();
+        channel = null;
+    }
+
+    private void append(GameEvent event) throws IOException {
+        int value = (int) event.value;
+        switch (event.type) {
+            case COUNTDOWN:
+            case ELAPSED:
+            case WINNERS:
+            case DISPOSE:
+                return;
+            case FREEZE:
+                long previous = freezes[event.player];
+                freezes[event.player] = event.value;
+                if (previous > 0 || event.value <= 0) return;
+                break;
+            case CLAIM:
+                value = 0;
+                for (int i = event.cards.length - 1; i >= 0; --i)
+                    value = value << 8 | event.cards[i] & 0xFF;
+                break;
+            default:
+        }
+        if (buffer.remaining() < RECORD_BYTES) rollOver();
+        buffer.put((byte) (event.type.ordinal() + 1));
+        buffer.put((byte) (event.player < 0 ? NONE : event.player));
+        buffer.put((byte) (event.slot < 0 ? NONE : event.slot));
+        buffer.put((byte) (event.card < 0 ? NONE : event.card));
+        buffer.putInt(value);
+        buffer.putLong(event.nanos - startNanos);
+        ++records;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(GameEvent event) {
+        if (closed) return;
+        try {
+            append(event);
+        } catch (IOException e) {
+            logger.severe("cannot journal: " + e.getMessage() + " journaling stopped.");
+            close();
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        close();
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            closeSegment();
+            logger.info("journaled " + records + " records in " + (segment + 1) + " segments.");
+        } catch (IOException e) {
+            logger.severe("cannot close journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The settings a journal segment was written with.
+     */
+    public static final class Header {
+        public final long seed;
+        public final long startMillis;
+        public final int segment;
+        public final int featureSize;
+        public final int featureCount;
+        public final int players;
+        public final int humanPlayers;
+        public final int rows;
+        public final int columns;
+        public final int deckSize;
+        public final long turnTimeoutMillis;
+        public final long pointFreezeMillis;
+        public final long penaltyFreezeMillis;
+
+        private Header(MappedByteBuffer buffer) throws IOException {
+            if (buffer.getInt() != MAGIC) throw new IOException("not a game journal");
+            if (buffer.getShort() != VERSION || buffer.getShort() != RECORD_BYTES)
+                throw new IOException("unsupported journal version");
+            seed = buffer.getLong();
+            startMillis = buffer.getLong();
+            segment = buffer.getInt();
+            featureSize = buffer.get();
+            featureCount = buffer.get();
+            players = buffer.get() & 0xFF;
+            humanPlayers = buffer.get() & 0xFF;
+            rows = buffer.getShort();
+            columns = buffer.getShort();
+            deckSize = buffer.getInt();
+            turnTimeoutMillis = buffer.getLong();
+            pointFreezeMillis = buffer.getLong();
+            penaltyFreezeMillis = buffer.getLong();
+        }
+
+        @Override
+        public String toString() {
+            return "seed=" + seed + " start=" + startMillis + " segment=" + segment + " features=" + featureCount + "x"
+                    + featureSize + " players=" + players + " (" + humanPlayers + " human) table=" + rows + "x" + columns
+                    + " turn=" + turnTimeoutMillis + " point=" + pointFreezeMillis + " penalty=" + penaltyFreezeMillis;
+        }
+    }
+
+    /**
+     * A journaled event (player, slot and card are -1 when not relevant to the type).
+     */
+    public static final class Record {
+        public final GameEvent.Type type;
+        public final int player;
+        public final int slot;
+        public final int card;
+        public final int value;
+        public final long nanos;
+
+        private Record(GameEvent.Type type, int player, int slot, int card, int value, long nanos) {
+            this.type = type;
+            this.player = player;
+            this.slot = slot;
+            this.card = card;
+            this.value = value;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @param featureSize - the number of cards in a claim.
+         * @return - the claimed cards (for CLAIM records).
+         */
+        public int[] cards(int featureSize) {
+            int[] cards = new int[featureSize];
+            for (int i = 0; i < featureSize; ++i)
+                cards[i] = value >>> (8 * i) & 0xFF;
+            return cards;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12.3f ms %-19s player=%d slot=%d card=%d value=%d", nanos / 1e6, type, player, slot, card, value);
+        }
+    }
+
+    /**
+     * Streams the records of the segments of a journal back, in order.
+     */
+    public static final class Reader implements Iterator<Record>, Closeable {
+
+        private final Iterator<Path> segments;
+        private MappedByteBuffer buffer;
+        private Header header;
+
+        /**
+         * @param segments - the segment files of one journal, in order (see segments).
+         */
+        public Reader(List<Path> segments) throws IOException {
+            this.segments = segments.iterator();
+            advance();
+        }
+
+        /**
+         * @return - the header of the segment being read (null if the journal is empty).
+         */
+        public Header header() {
+            return header;
+        }
+
+        private boolean advance() throws IOException {
+            while (buffer == null || !buffer.hasRemaining() || buffer.get(buffer.position()) == 0) {
+                if (!segments.hasNext()) return false;
+                try (FileChannel channel = FileChannel.open(segments.next(), StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                header = new Header(buffer);
+                buffer.position(HEADER_BYTES);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            GameEvent.Type type = GameEvent.Type.values()[buffer.get() - 1];
+            int player = buffer.get() & 0xFF;
+            int slot = buffer.get() & 0xFF;
+            int card = buffer.get() & 0xFF;
+            int value = buffer.getInt();
+            long nanos = buffer.getLong();
+            return new Record(type, player == NONE ? -1 : player, slot == NONE ? -1 : slot,
+                    card == NONE && type != GameEvent.Type.CARD_PLACED ? -1 : card, value, nanos);
+        }
+
+        @Override
+        public void close() {
+            buffer = null;
+        }
+
+        /**
+         * @param path - a journal directory (for its most recent journal) or any segment file of a journal.
+         * @return - the segment files of the journal, in order.
+         */
+        public static List<Path> segments(Path path) throws IOException {
+            String prefix;
+            Path directory;
+            if (Files.isDirectory(path)) {
+                directory = path;
+                try (Stream<Path> files = Files.list(directory)) {
+                    prefix = files.map(file -> file.getFileName().toString())
+                            .filter(name -> name.startsWith("journal-") && name.endsWith(".bin"))
+                            .max((a, b) -> Long.compare(startOf(a), startOf(b)))
+                            .map(name -> name.substring(0, name.lastIndexOf('-') + 1))
+                            .orElseThrow(() -> new IOException("no journal in " + path));
+                }
+            } else {
+                directory = path.toAbsolutePath().getParent();
+                String name = path.getFileName().toString();
+                prefix = name.substring(0, name.lastIndexOf('-') + 1);
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted()
+                        .collect(Collectors.toCollection(ArrayList::new));
+            }
+        }
+
+        private static long startOf(String name) {
+            String[] parts = name.split("-");
+            return parts.length == 4 ? Long.parseLong(parts[2]) : 0;
+        }
+    }
+
+    /**
+     * Prints a journal.
+     *
+     * @param args - a journal directory or a segment file.
+     */
+    public static void main(String[] args) throws IOException {
+        try (Reader reader = new Reader(Reader.segments(Paths.get(args[0])))) {
+            System.out.println(reader.header());
+            long count = 0;
+            while (reader.hasNext()) {
+                System.out.println(reader.next());
+                ++count;
+            }
+            System.out.println(count + " records");
+        }
+    }
+}
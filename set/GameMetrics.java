@@ -0,0 +1,56 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of the game. The counters are striped (LongAdder) so the game threads updating them never contend.
+ */
+public class GameMetrics {
+
+    /**
+     * Claims that entered the dealer's queue.
+     */
+    public final LongAdder claimsEnqueued = new LongAdder();
+
+    /**
+     * Claims the dealer took off the queue.
+     */
+    public final LongAdder claimsDequeued = new LongAdder();
+
+    /**
+     * Claims of legal sets (a point was awarded).
+     */
+    public final LongAdder claimsAccepted = new LongAdder();
+
+    /**
+     * Claims of illegal sets (a penalty was given).
+     */
+    public final LongAdder claimsRejected = new LongAdder();
+
+    /**
+     * Claims that included a card that was no longer on the table.
+     */
+    public final LongAdder claimsStale = new LongAdder();
+
+    /**
+     * Times all the cards were returned from the table to the deck.
+     */
+    public final LongAdder reshuffles = new LongAdder();
+
+    /**
+     * Times the table was left with no set (and reshuffled early, see Config.deadTableGraceMillis).
+     */
+    public final LongAdder deadTables = new LongAdder();
+
+    /**
+     * The number of cards left in the dealer's deck.
+     */
+    public volatile int deckCards;
+
+    /**
+     * @return - the number of claims waiting in the dealer's queue.
+     */
+    public long queueDepth() {
+        return Math.max(0, claimsEnqueued.sum() - claimsDequeued.sum());
+    }
+}
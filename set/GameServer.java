@@ -0,0 +1,236 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.DealingStrategy;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.StateSlab;
+import bguspl.set.ex.Table;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent games in one process. Each session gets its own environment (with a headless user interface,
+ * its own event bus and metrics), table, dealer and players. The dealers, the players and the computer players of all
+ * the sessions are submitted as tasks to one shared cached thread pool rather than started as threads of their own, so
+ * the threads of ended games are reused by the next ones.
+ * <p>
+ * This does not make a game cheaper in threads: the tasks are the usual loops, which block while they wait (for
+ * claims, key presses or the end of a freeze), so each running game holds a pooled thread per dealer, player and
+ * computer player until it ends. The number of threads is bounded by the server's limits only: the number of sessions
+ * and their sizes (config.serverMaxSessions and config.serverMaxPlayers), and the length of a game
+ * (config.serverMaxGameMillis), after which it is ended.
+ * <p>
+ * With config.serverOffHeapState, the tables and the decks of the sessions are kept off-heap, in a StateSlab of
+ * config.serverMaxSessions regions (the games must then have the table and deck sizes of the server's configuration).
+ */
+public class GameServer implements Closeable {
+
+    private final Logger logger;
+    private final Config config;
+    private final Leaderboard leaderboard;
+
+    /**
+     * Runs the dealers and the players of all the sessions (a thread per running dealer, player and computer player).
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Ends the sessions that run out of time.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The off-heap state of the sessions (null if it is kept on the heap).
+     */
+    private final StateSlab slab;
+
+    private final ConcurrentHashMap<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final LongAdder ended = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param logger      - the logger shared by all the sessions.
+     * @param config      - the server's configuration (its limits).
+     * @param leaderboard - the leaderboard the results of all the sessions are added to (null for none).
+     */
+    public GameServer(Logger logger, Config config, Leaderboard leaderboard) {
+        this.logger = logger;
+        this.config = config;
+        this.leaderboard = leaderboard;
+        slab = config.serverOffHeapState ? new StateSlab(config, config.serverMaxSessions) : null;
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "game-" + threads.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "game-server-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts a new game.
+     *
+     * @param game - the game's configuration.
+     * @return - the session of the game.
+     * @throws IllegalStateException    - if the server is closed or hosts config.serverMaxSessions games already.
+     * @throws IllegalArgumentException - if the game has more than config.serverMaxPlayers players, does not fit the
+     *                                  off-heap state or is snapshotted (the sessions would share the snapshot file,
+     *                                  and hosted games are not resumed).
+     */
+    public synchronized GameSession open(Config game) {
+        if (closed) throw new IllegalStateException("the game server is closed");
+        if (sessions.size() >= config.serverMaxSessions)
+            throw new IllegalStateException("the game server hosts " + sessions.size() + " games already");
+        if (game.players > config.serverMaxPlayers)
+            throw new IllegalArgumentException("too many players: " + game.players + " (at most " + config.serverMaxPlayers + ")");
+        if (slab != null && (game.tableSize != config.tableSize || game.deckSize != config.deckSize))
+            throw new IllegalArgumentException("the game's table or deck does not fit the off-heap state");
+        if (!game.snapshotFile.isEmpty())
+            throw new IllegalArgumentException("hosted games cannot be snapshotted: " + game.snapshotFile);
+
+        // every session deals its own cards, and the same seed and session id still replay the same game
+        int id = ids.getAndIncrement();
+        long seed = game.seed + id * 0x9E3779B97F4A7C15L;
+        Env env = new Env(logger, game, new UserInterfaceHeadless(UserInterfaceHeadless.Mode.NO_OP, 0),
+                new UtilImpl(game, seed), new GameEventBus(), leaderboard);
+        StateSlab.Region state = slab == null ? null : slab.allocate();
+        Table table = state == null ? new Table(env) : new Table(env, state);
+        Player[] players = new Player[game.players];
+        Dealer dealer = new Dealer(env, table, players, DealingStrategy.of(env, table), executor);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < game.humanPlayers);
+
+        GameSession session = new GameSession(id, env, table, dealer, players, state);
+        sessions.put(session.id, session);
+        session.task = executor.submit(() -> run(session));
+        if (config.serverMaxGameMillis > 0)
+            session.deadline = timer.schedule(session::terminate, config.serverMaxGameMillis, TimeUnit.MILLISECONDS);
+        return session;
+    }
+
+    /**
+     * Runs the dealer of a session (on the executor, under the name of the session's dealer).
+     */
+    private void run(GameSession session) {
+        Thread thread = Thread.currentThread();
+        String pooled = thread.getName();
+        thread.setName("dealer-" + session.id);
+        ThreadLogger.logStart(logger, thread.getName());
+        try {
+            session.dealer.run();
+        } catch (RuntimeException e) {
+            logger.severe("session " + session.id + " failed: " + e);
+        } finally {
+            ThreadLogger.logStop(logger, thread.getName());
+            thread.setName(pooled);
+            session.endMillis = System.currentTimeMillis();
+            if (session.deadline != null) session.deadline.cancel(false);
+            session.env.bus.close(0);
+            if (session.state != null) session.state.release();
+            sessions.remove(session.id);
+            ended.increment();
+            logger.info(session.toString());
+        }
+    }
+
+    /**
+     * @return - the sessions running now.
+     */
+    public List<GameSession> sessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * @return - the number of sessions that ended.
+     */
+    public long ended() {
+        return ended.sum();
+    }
+
+    /**
+     * @return - a report of the server and of each running session.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "game server: %d running, %d ended, %d threads",
+                sessions.size(), ended(), ManagementFactory.getThreadMXBean().getThreadCount()));
+        for (GameSession session : sessions.values())
+            sb.append(System.lineSeparator()).append("  ").append(session);
+        return sb.toString();
+    }
+
+    /**
+     * Ends all the games, waits (up to the given time) for their dealers to finish and stops the server's threads.
+     */
+    public void close(long timeoutMillis) {
+        synchronized (this) {
+            closed = true;
+        }
+        for (GameSession session : sessions.values())
+            session.terminate();
+        executor.shutdown();
+        timer.shutdownNow();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS))
+                logger.severe("game server: " + sessions.size() + " games did not end in time.");
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Override
+    public void close() {
+        close(config.endGamePauseMillies + 1000);
+    }
+
+    /**
+     * Runs games headless in one process and reports the memory they take.
+     *
+     * @param args - the number of games (100 by default) and the configuration file (config.properties by default).
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        Logger logger = Logger.getLogger("SetGameLogger");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, args.length > 1 ? args[1] : "config.properties");
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        try (GameServer server = new GameServer(logger, config, null)) {
+            System.gc();
+            long before = memory.getHeapMemoryUsage().getUsed();
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            for (int i = 0; i < games; ++i)
+                server.open(config);
+            Thread.sleep(1000);
+            System.gc();
+            long after = memory.getHeapMemoryUsage().getUsed();
+            System.out.printf(Locale.ROOT, "%d games: %.1f KB heap%s and %.1f threads per game%n", games,
+                    (after - before) / 1024.0 / games,
+                    server.slab == null ? "" : String.format(Locale.ROOT, " (+%d bytes off-heap)", server.slab.regionBytes()),
+                    (double) (ManagementFactory.getThreadMXBean().getThreadCount() - threads) / games);
+            while (!server.sessions().isEmpty()) {
+                Thread.sleep(1000);
+                System.out.println(server.report());
+            }
+        } finally {
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.StateSlab;
+import bguspl.set.ex.Table;
+
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+/**
+ * One game hosted by a GameServer: its own environment, table, dealer and players, sharing nothing with the other
+ * sessions but the server's executor (and leaderboard).
+ */
+public class GameSession {
+
+    /**
+     * The id of the session (unique in its server, starting from 0).
+     */
+    public final int id;
+
+    /**
+     * The game entities.
+     */
+    public final Env env;
+    public final Table table;
+    public final Dealer dealer;
+    public final Player[] players;
+
+    /**
+     * The off-heap state of the game (null if it is kept on the heap).
+     */
+    final StateSlab.Region state;
+
+    /**
+     * The time the session started and ended (0 while it runs).
+     */
+    public final long startMillis;
+    volatile long endMillis;
+
+    /**
+     * The dealer's task and the timer ending the session when it runs out of time (null if it never does).
+     */
+    volatile Future<?> task;
+    volatile Future<?> deadline;
+
+    GameSession(int id, Env env, Table table, Dealer dealer, Player[] players, StateSlab.Region state) {
+        this.id = id;
+        this.env = env;
+        this.table = table;
+        this.dealer = dealer;
+        this.players = players;
+        this.state = state;
+        startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return - true iff the game did not end yet.
+     */
+    public boolean isAlive() {
+        return endMillis == 0;
+    }
+
+    /**
+     * Ends the game (the winners are announced and the session is closed once the dealer's thread finishes).
+     */
+    public void terminate() {
+        dealer.terminate();
+    }
+
+    @Override
+    public String toString() {
+        long end = endMillis == 0 ? System.currentTimeMillis() : endMillis;
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "session %d (seed %d): %s %.1f s deck: %d claims: %d reshuffles: %d scores:",
+                id, env.util.seed(), isAlive() ? "running" : "ended after", (end - startMillis) / 1000.0, env.metrics.deckCards,
+                env.metrics.claimsDequeued.sum(), env.metrics.reshuffles.sum()));
+        for (Player player : players)
+            sb.append(' ').append(env.config.playerNames[player.id]).append('=').append(player.score());
+        return sb.toString();
+    }
+}
@@ -5,7 +5,6 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
-import java.util.logging.Logger;
 
 /**
  * This class handles the input from the keyboard, translates it to table grid slots and dispatches accordingly.
@@ -16,11 +15,11 @@ class InputManager extends KeyAdapter {
     private final Player[] players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
-    private final Logger logger;
+    private final EventLog events;
 
-    public InputManager(Logger logger, Config config, Player[] players) {
+    public InputManager(EventLog events, Config config, Player[] players) {
         this.players = players;
-        this.logger = logger;
+        this.events = events;
 
         // initialize the keys
         for (int player = 0; player < config.players; ++player)
@@ -43,7 +42,7 @@ class InputManager extends KeyAdapter {
         int keyCode = e.getKeyCode();
         int player = keyMap[keyCode] - 1;
         if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
+            events.log(EventLog.Type.KEY_PRESSED, keyCode, player + 1);
             players[player].keyPressed(keyToSlot[keyCode]);
         }
     }
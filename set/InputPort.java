@@ -0,0 +1,26 @@
+package bguspl.set;
+
+/**
+ * Where remote key presses are dispatched to (see InputServer).
+ */
+public interface InputPort {
+
+    /**
+     * @return - the number of players that can press keys (the players with the lowest ids).
+     */
+    int players();
+
+    /**
+     * @return - the number of slots on the table.
+     */
+    int slots();
+
+    /**
+     * Dispatches a key press.
+     *
+     * @param player - the id of the player (0 <= player < players()).
+     * @param slot   - the slot pressed (0 <= slot < slots()).
+     * @return - true iff the press was accepted.
+     */
+    boolean press(int player, int slot);
+}
@@ -0,0 +1,254 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking TCP server (bound to the loopback interface) for remote players. One selector thread reads all the
+ * connections into per-connection buffers and decodes FRAME_BYTES frames in place, so no object is allocated per key
+ * press:
+ * <pre>
+ * HELLO: 1, player (unsigned short) - the connection presses the keys of the player from now on
+ * PRESS: 2, slot (unsigned short)   - the player presses the key of the slot
+ * </pre>
+ * The server never writes to the connections. Presses before a HELLO, frames of unknown types, invalid players or
+ * slots and a HELLO for a player another connection plays close the connection. Each connection has a token bucket of config.inputRateLimit presses per second (with
+ * bursts of up to config.inputRateBurst presses); presses over the limit are dropped and counted.
+ */
+public class InputServer {
+
+    public static final int FRAME_BYTES = 3;
+    public static final byte HELLO = 1;
+    public static final byte PRESS = 2;
+
+    private static final int BUFFER_BYTES = 4096 / FRAME_BYTES * FRAME_BYTES;
+
+    private final Logger logger;
+    private final InputPort port;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+
+    /**
+     * The refill rate (tokens per nanosecond, 0 for no limit) and the capacity of each connection's token bucket.
+     */
+    private final double tokensPerNano;
+    private final double burst;
+
+    private volatile boolean closed;
+
+    /**
+     * The connection playing each player (null if none; used by the selector thread only).
+     */
+    private final Connection[] bindings;
+
+    /**
+     * The number of presses dispatched, accepted by the port and dropped by the rate limit.
+     */
+    public final LongAdder presses = new LongAdder();
+    public final LongAdder accepted = new LongAdder();
+    public final LongAdder limited = new LongAdder();
+
+    /**
+     * The state of a connection (its selection key's attachment).
+     */
+    private static final class Connection {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        int player = -1;
+        double tokens;
+        long refillNanos;
+    }
+
+    /**
+     * @param logger - the logger.
+     * @param config - the configuration (the port and the rate limit).
+     * @param port   - where the presses are dispatched to.
+     */
+    public InputServer(Logger logger, Config config, InputPort port) throws IOException {
+        this.logger = logger;
+        this.port = port;
+        tokensPerNano = config.inputRateLimit / 1e9;
+        burst = Math.max(1, config.inputRateBurst);
+        bindings = new Connection[port.players()];
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.inputServerPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "input-server");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * An input port dispatching to the human players' keyPressed (the computer players press their own keys).
+     *
+     * @param players - the players.
+     * @param humans  - the number of human players (the first players).
+     * @param slots   - the number of slots on the table.
+     * @return - the port.
+     */
+    public static InputPort of(Player[] players, int humans, int slots) {
+        return new InputPort() {
+            @Override
+            public int players() {
+                return humans;
+            }
+
+            @Override
+            public int slots() {
+                return slots;
+            }
+
+            @Override
+            public boolean press(int player, int slot) {
+                return players[player].keyPressed(slot);
+            }
+        };
+    }
+
+    public void start() {
+        thread.start();
+        logger.info("accepting remote players at " + address());
+    }
+
+    /**
+     * @return - the address the server listens on.
+     */
+    public InetSocketAddress address() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return - the selector thread.
+     */
+    public Thread thread() {
+        return thread;
+    }
+
+    public void stop() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) read(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) logger.severe("input server failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys())
+                close(key);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection();
+        connection.tokens = burst;
+        connection.refillNanos = System.nanoTime();
+        channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer buffer = connection.buffer;
+        try {
+            if (channel.read(buffer) < 0) {
+                close(key);
+                return;
+            }
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+        buffer.flip();
+        while (buffer.remaining() >= FRAME_BYTES) {
+            byte type = buffer.get();
+            int value = buffer.getShort() & 0xFFFF;
+            if (!decode(connection, type, value)) {
+                logger.severe("closing remote input connection: invalid frame " + type + " " + value);
+                close(key);
+                return;
+            }
+        }
+        buffer.compact();
+    }
+
+    /**
+     * Handles a frame.
+     *
+     * @return - false if the frame is invalid.
+     */
+    private boolean decode(Connection connection, byte type, int value) {
+        if (type == HELLO) {
+            if (value >= port.players() || bindings[value] != null && bindings[value] != connection) return false;
+            if (connection.player >= 0) bindings[connection.player] = null;
+            bindings[value] = connection;
+            connection.player = value;
+            return true;
+        }
+        if (type != PRESS || connection.player < 0 || value >= port.slots()) return false;
+        if (tokensPerNano > 0) {
+            long now = System.nanoTime();
+            connection.tokens = Math.min(burst, connection.tokens + (now - connection.refillNanos) * tokensPerNano);
+            connection.refillNanos = now;
+            if (connection.tokens < 1) {
+                limited.increment();
+                return true;
+            }
+            connection.tokens -= 1;
+        }
+        presses.increment();
+        if (port.press(connection.player, value)) accepted.increment();
+        return true;
+    }
+
+    private void close(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (connection != null && connection.player >= 0 && bindings[connection.player] == connection)
+            bindings[connection.player] = null;
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets (in the spirit of HdrHistogram).
+ * Values below 64 are counted exactly, larger values fall in one of 32 buckets per power of two (about 3% precision),
+ * up to 2^40 nanoseconds. Recording never blocks and never allocates, so it is safe to call from the game threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+    private static final int MAX_EXPONENT = 40 - SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + MAX_EXPONENT * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (exponent - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param nanos - the latency to record (negative values are counted as 0, huge values are capped).
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) ;
+    }
+
+    /**
+     * @return - the number of recorded values.
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return - the sum of the recorded values.
+     */
+    public long sum() {
+        return sum.get();
+    }
+
+    /**
+     * @return - the mean of the recorded values (0 if none).
+     */
+    public double mean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * @return - the largest recorded value.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value at the given percentile (with the precision of the buckets).
+     *
+     * @param percentile - the percentile (0 - 100).
+     * @return - the highest value of the bucket containing the percentile (0 if no values were recorded).
+     */
+    public long percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestValueOf(i), max.get());
+        }
+        return max.get();
+    }
+}
@@ -0,0 +1,268 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * A persistent leaderboard: the statistics of every player over all the games played, kept in a memory-mapped file of
+ * fixed size records keyed by the player's name. The counters are updated with atomic additions on the mapped file, so
+ * the games ending concurrently never lock each other (only the first game of a new player takes a lock, to allocate
+ * its record).
+ * <p>
+ * The file starts with a HEADER_BYTES header (magic, version, record size and the number of records) followed by
+ * RECORD_BYTES records:
+ * <pre>
+ *  0: name      (NAME_BYTES bytes, UTF-8, zero padded)
+ * 32: games     (long)
+ * 40: wins      (long)
+ * 48: points    (long)
+ * 56: penalties (long)
+ * 64: claims    (long, the number of claims judged)
+ * 72: latency   (long, the total nanoseconds from the key press completing a claim to its verdict)
+ * </pre>
+ */
+public class Leaderboard implements Closeable {
+
+    public static final int MAGIC = 0x5345544C; // "SETL"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 16;
+    public static final int RECORD_BYTES = 80;
+    public static final int NAME_BYTES = 32;
+
+    private static final int GAMES = NAME_BYTES;
+    private static final int WINS = GAMES + 8;
+    private static final int POINTS = WINS + 8;
+    private static final int PENALTIES = POINTS + 8;
+    private static final int CLAIMS = PENALTIES + 8;
+    private static final int LATENCY = CLAIMS + 8;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Logger logger;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The offset of the record of each player name.
+     */
+    private final ConcurrentHashMap<String, Integer> offsets = new ConcurrentHashMap<>();
+
+    /**
+     * @param logger - the logger.
+     * @param config - the game configuration (the leaderboard file and its capacity).
+     */
+    public Leaderboard(Logger logger, Config config) throws IOException {
+        this.logger = logger;
+        path = Paths.get(config.leaderboardFile);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean created = channel.size() == 0;
+        long size = Math.max(channel.size(), HEADER_BYTES + (long) config.leaderboardCapacity * RECORD_BYTES);
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("leaderboard capacity too large: " + config.leaderboardCapacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (created) {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, RECORD_BYTES).putInt(12, 0);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != RECORD_BYTES) {
+            channel.close();
+            throw new IOException("not a leaderboard file: " + path);
+        }
+        int records = buffer.getInt(12);
+        for (int i = 0; i < records; ++i) {
+            int offset = HEADER_BYTES + i * RECORD_BYTES;
+            offsets.put(nameAt(offset), offset);
+        }
+        logger.info("leaderboard " + path + " has " + records + " players.");
+    }
+
+    private String nameAt(int offset) {
+        byte[] bytes = new byte[NAME_BYTES];
+        buffer.get(offset, bytes);
+        int length = 0;
+        while (length < NAME_BYTES && bytes[length] != 0) ++length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return - the name as stored in the file (truncated to NAME_BYTES bytes).
+     */
+    private static String key(String name) {
+        // drop whole code points, so a surrogate pair is never split
+        int end = name.length();
+        while (name.substring(0, end).getBytes(StandardCharsets.UTF_8).length > NAME_BYTES)
+            end = name.offsetByCodePoints(end, -1);
+        return name.substring(0, end);
+    }
+
+    /**
+     * @return - the offset of the player's record, allocated if the player has none (-1 if the file is full).
+     */
+    private int offsetOf(String name) {
+        Integer offset = offsets.get(name);
+        return offset != null ? offset : allocate(name);
+    }
+
+    private synchronized int allocate(String name) {
+        Integer offset = offsets.get(name);
+        if (offset != null) return offset;
+        int records = buffer.getInt(12);
+        if (HEADER_BYTES + (long) (records + 1) * RECORD_BYTES > buffer.capacity()) {
+            logger.severe("leaderboard " + path + " is full, " + name + " is not recorded.");
+            return -1;
+        }
+        int at = HEADER_BYTES + records * RECORD_BYTES;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        buffer.put(at, bytes);
+        buffer.putInt(12, records + 1);
+        offsets.put(name, at);
+        return at;
+    }
+
+    /**
+     * Adds the results of a player in one game to the player's statistics.
+     *
+     * @param name         - the player's name (truncated to NAME_BYTES bytes).
+     * @param won          - true iff the player is one of the game's winners.
+     * @param points       - the points the player scored in the game.
+     * @param penalties    - the penalties the player got in the game.
+     * @param claims       - the number of claims of the player judged in the game.
+     * @param latencyNanos - the total latency of these claims.
+     */
+    public void record(String name, boolean won, long points, long penalties, long claims, long latencyNanos) {
+        int offset = offsetOf(key(name));
+        if (offset < 0) return;
+        LONGS.getAndAdd(buffer, offset + GAMES, 1L);
+        if (won) LONGS.getAndAdd(buffer, offset + WINS, 1L);
+        LONGS.getAndAdd(buffer, offset + POINTS, points);
+        LONGS.getAndAdd(buffer, offset + PENALTIES, penalties);
+        LONGS.getAndAdd(buffer, offset + CLAIMS, claims);
+        LONGS.getAndAdd(buffer, offset + LATENCY, latencyNanos);
+    }
+
+    /**
+     * The statistics of a player.
+     */
+    public static final class Entry {
+        public final String name;
+        public final long games;
+        public final long wins;
+        public final long points;
+        public final long penalties;
+        public final long claims;
+        public final long latencyNanos;
+
+        private Entry(String name, long games, long wins, long points, long penalties, long claims, long latencyNanos) {
+            this.name = name;
+            this.games = games;
+            this.wins = wins;
+            this.points = points;
+            this.penalties = penalties;
+            this.claims = claims;
+            this.latencyNanos = latencyNanos;
+        }
+
+        /**
+         * @return - the average latency of the player's claims in nanoseconds (0 if none).
+         */
+        public double averageLatencyNanos() {
+            return claims == 0 ? 0 : (double) latencyNanos / claims;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-20s games: %6d wins: %6d points: %8d penalties: %8d latency: %10.1f us",
+                    name, games, wins, points, penalties, averageLatencyNanos() / 1000.0);
+        }
+    }
+
+    /**
+     * The default ranking: by wins, then by points.
+     */
+    public static final Comparator<Entry> BY_WINS = Comparator.<Entry>comparingLong(e -> e.wins).thenComparingLong(e -> e.points);
+
+    /**
+     * @param name - the player's name.
+     * @return - the player's statistics (null if the player never played).
+     */
+    public Entry entry(String name) {
+        Integer offset = offsets.get(key(name));
+        return offset == null ? null : entryAt(offset);
+    }
+
+    private Entry entryAt(int offset) {
+        return new Entry(nameAt(offset), (long) LONGS.getVolatile(buffer, offset + GAMES),
+                (long) LONGS.getVolatile(buffer, offset + WINS), (long) LONGS.getVolatile(buffer, offset + POINTS),
+                (long) LONGS.getVolatile(buffer, offset + PENALTIES), (long) LONGS.getVolatile(buffer, offset + CLAIMS),
+                (long) LONGS.getVolatile(buffer, offset + LATENCY));
+    }
+
+    /**
+     * Finds the best k players, keeping only the k best seen so far in a heap (so a query costs O(n log k)).
+     *
+     * @param k       - the number of players.
+     * @param ranking - the order of the players (higher is better).
+     * @return - the best k players, best first.
+     */
+    public List<Entry> top(int k, Comparator<Entry> ranking) {
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.max(k, 1), ranking);
+        for (int offset : offsets.values()) {
+            Entry entry = entryAt(offset);
+            if (heap.size() < k) heap.add(entry);
+            else if (k > 0 && ranking.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<Entry> top = new ArrayList<>(heap);
+        top.sort(Collections.reverseOrder(ranking));
+        return top;
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            logger.severe("cannot close leaderboard " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the top players of a leaderboard.
+     *
+     * @param args - the leaderboard file and optionally the number of players (10 by default).
+     */
+    public static void main(String[] args) throws IOException {
+        Logger logger = Logger.getLogger("SetGameLogger");
+        logger.setUseParentHandlers(false);
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("LeaderboardFile", args[0]);
+        try (Leaderboard leaderboard = new Leaderboard(logger, new Config(logger, properties))) {
+            int k = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            List<Entry> top = leaderboard.top(k, BY_WINS);
+            for (int i = 0; i < top.size(); ++i)
+                System.out.printf("%3d. %s%n", i + 1, top.get(i));
+            if (top.isEmpty()) System.out.println("no players");
+        }
+    }
+}
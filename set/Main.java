@@ -1,11 +1,14 @@
 package bguspl.set;
 
 import bguspl.set.ex.Dealer;
+import bguspl.set.ex.GameSnapshot;
 import bguspl.set.ex.Player;
 import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -43,21 +46,78 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        if (config.threadStatsMillis >= 0) ThreadLogger.enableTelemetry(logger, config.threadStatsMillis);
+
+        // the snapshot to resume the game from, read first so the resumed game draws from the snapshot's random streams
+        GameSnapshot snapshot = null;
+        if (config.resume && !config.snapshotFile.isEmpty() && Files.exists(Paths.get(config.snapshotFile))) {
+            try {
+                snapshot = GameSnapshot.read(Paths.get(config.snapshotFile));
+            } catch (IOException | IllegalArgumentException e) {
+                logger.severe("cannot resume game from " + config.snapshotFile + ": " + e.getMessage() + " starting a new game.");
+            }
+        }
+        Util util = new UtilImpl(config, snapshot == null ? config.seed : snapshot.seed);
+        EventLog events = new EventLog(logger, config);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
-        try {
-            ui = new UserInterfaceSwing(logger, config, players);
-        } catch (UnsupportedOperationException | IllegalArgumentException e) {
-            logger.severe("error creating swing user interface: " + e.getMessage());
-            logger.severe("will try to run without user interface");
-            if (config.humanPlayers > 0)
-                logger.severe("warning: running with human players with no user interface");
+        if (config.userInterface.equals("headless"))
+            ui = new UserInterfaceHeadless(UserInterfaceHeadless.Mode.NO_OP, 0);
+        else if (config.userInterface.equals("recording"))
+            ui = new UserInterfaceHeadless(UserInterfaceHeadless.Mode.RECORDING, config.recordingCapacity);
+        else {
+            try {
+                if (config.userInterface.equals("canvas"))
+                    ui = new UserInterfaceCanvas(logger, events, config, players);
+                else
+                    ui = new UserInterfaceSwing(logger, events, config, players);
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                logger.severe("error creating swing user interface: " + e.getMessage());
+                logger.severe("will try to run without user interface");
+                if (config.humanPlayers > 0)
+                    logger.severe("warning: running with human players with no user interface");
+            }
+            ui = new UserInterfaceDecorator(logger, events, config, util, ui);
+        }
+
+        // the user interface and the journal as subscribers of the game event bus
+        GameEventBus bus = new GameEventBus();
+        GameJournal journal = null;
+        if (!config.journalDirectory.isEmpty()) {
+            try {
+                journal = new GameJournal(logger, config, util.seed());
+                bus.subscribe(journal, GameEventBus.Policy.BLOCK, config.eventBufferSize, config.eventBatchSize);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.severe("cannot create game journal: " + e.getMessage());
+            }
+        }
+        SpectatorServer spectators = null;
+        if (config.spectatorPort > 0) {
+            try {
+                spectators = new SpectatorServer(logger, config);
+                bus.subscribe(spectators, GameEventBus.Policy.CONFLATE, config.eventBufferSize, config.eventBatchSize);
+                spectators.start();
+            } catch (IOException e) {
+                logger.severe("cannot start spectator server: " + e.getMessage());
+                spectators = null;
+            }
+        }
+        if (config.eventBus || journal != null || spectators != null) {
+            bus.subscribe(new UserInterfaceSubscriber(ui), config.uiEventPolicy, config.eventBufferSize, config.eventBatchSize);
+            ui = new UserInterfacePublisher(bus);
+        }
+
+        Leaderboard leaderboard = null;
+        if (!config.leaderboardFile.isEmpty()) {
+            try {
+                leaderboard = new Leaderboard(logger, config);
+            } catch (IOException | IllegalArgumentException e) {
+                logger.severe("cannot open leaderboard: " + e.getMessage());
+            }
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        Env env = new Env(logger, config, ui, util, bus, leaderboard);
 
         // create the game entities
         Table table = new Table(env);
@@ -65,6 +125,37 @@ public class Main {
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
+        // resume the game from its snapshot
+        if (snapshot != null) {
+            long start = System.nanoTime();
+            try {
+                dealer.restore(snapshot);
+                logger.info("resumed game from " + config.snapshotFile + " in " + (System.nanoTime() - start) / 1000 + " us.");
+            } catch (IllegalArgumentException e) {
+                logger.severe("cannot resume game from " + config.snapshotFile + ": " + e.getMessage() + " starting a new game.");
+            }
+        }
+
+        MetricsServer metricsServer = null;
+        if (config.metricsPort > 0) {
+            try {
+                metricsServer = new MetricsServer(env, players, config.metricsPort);
+                metricsServer.start();
+            } catch (IOException e) {
+                logger.severe("cannot start metrics server: " + e.getMessage());
+            }
+        }
+
+        InputServer inputServer = null;
+        if (config.inputServerPort > 0) {
+            try {
+                inputServer = new InputServer(logger, config, InputServer.of(players, config.humanPlayers, config.tableSize));
+                inputServer.start();
+            } catch (IOException e) {
+                logger.severe("cannot start input server: " + e.getMessage());
+            }
+        }
+
         // start the dealer thread
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
         dealerThread.startWithLog();
@@ -79,6 +170,12 @@ public class Main {
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
+            bus.close(config.endGamePauseMillies + 1000);
+            if (metricsServer != null) metricsServer.stop();
+            if (inputServer != null) inputServer.stop();
+            if (spectators != null) spectators.stop();
+            if (leaderboard != null) leaderboard.close();
+            events.close();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
@@ -109,7 +206,7 @@ public class Main {
         if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
             // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
             @Override
-            public synchronized String format(LogRecord lr) {
+            public String format(LogRecord lr) {
                 return String.format(format, new Date(lr.getMillis()),
                         lr.getLevel().getLocalizedName(), lr.getMessage()
                 );
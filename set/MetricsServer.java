@@ -0,0 +1,127 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An embedded HTTP endpoint (bound to the loopback interface) serving the live game counters in the Prometheus text
+ * format at /metrics.
+ */
+public class MetricsServer {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Env env;
+    private final Player[] players;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public MetricsServer(Env env, Player[] players, int port) throws IOException {
+        this.env = env;
+        this.players = players;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        env.logger.info("serving metrics at http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Generates the text of a scrape.
+     *
+     * @return - the metrics in the Prometheus text exposition format.
+     */
+    String scrape() {
+        GameMetrics metrics = env.metrics;
+        StringBuilder sb = new StringBuilder(1024);
+
+        header(sb, "set_claims_enqueued_total", "counter", "Set claims queued for the dealer");
+        sample(sb, "set_claims_enqueued_total", null, null, metrics.claimsEnqueued.sum());
+
+        header(sb, "set_claims_total", "counter", "Set claims by outcome");
+        sample(sb, "set_claims_total", "result", "accepted", metrics.claimsAccepted.sum());
+        sample(sb, "set_claims_total", "result", "rejected", metrics.claimsRejected.sum());
+        sample(sb, "set_claims_total", "result", "stale", metrics.claimsStale.sum());
+
+        header(sb, "set_claims_queue_depth", "gauge", "Claims waiting in the dealer's queue");
+        sample(sb, "set_claims_queue_depth", null, null, metrics.queueDepth());
+
+        header(sb, "set_reshuffles_total", "counter", "Times the table was cleared back into the deck");
+        sample(sb, "set_reshuffles_total", null, null, metrics.reshuffles.sum());
+
+        header(sb, "set_dead_tables_total", "counter", "Times the table was left with no set");
+        sample(sb, "set_dead_tables_total", null, null, metrics.deadTables.sum());
+
+        header(sb, "set_deck_cards", "gauge", "Cards remaining in the dealer's deck");
+        sample(sb, "set_deck_cards", null, null, metrics.deckCards);
+
+        header(sb, "set_player_score", "gauge", "Player score");
+        for (Player player : players)
+            if (player != null) sample(sb, "set_player_score", "player", env.config.playerNames[player.id], player.score());
+
+        header(sb, "set_player_frozen", "gauge", "Whether the player is frozen (1) or not (0)");
+        for (Player player : players)
+            if (player != null) sample(sb, "set_player_frozen", "player", env.config.playerNames[player.id], player.penalizedTime > 0 ? 1 : 0);
+
+        header(sb, "set_claim_latency_seconds", "summary", "Claim handling latency by stage");
+        for (ClaimLatencies.Stage stage : ClaimLatencies.Stage.values()) {
+            LatencyHistogram h = env.latencies.global(stage);
+            String name = stage.name().toLowerCase(Locale.ROOT);
+            for (double q : QUANTILES)
+                sb.append("set_claim_latency_seconds{stage=\"").append(name).append("\",quantile=\"").append(q).append("\"} ")
+                        .append(h.percentile(q * 100) / 1e9).append('\n');
+            sb.append("set_claim_latency_seconds_sum{stage=\"").append(name).append("\"} ").append(h.sum() / 1e9).append('\n');
+            sb.append("set_claim_latency_seconds_count{stage=\"").append(name).append("\"} ").append(h.count()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String label, String value, long sample) {
+        sb.append(name);
+        if (label != null) {
+            sb.append('{').append(label).append("=\"");
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') sb.append('\\').append(c);
+                else if (c == '\n') sb.append("\\n");
+                else sb.append(c);
+            }
+            sb.append("\"}");
+        }
+        sb.append(' ').append(sample).append('\n');
+    }
+}
@@ -0,0 +1,365 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Broadcasts a game to any number of spectators over TCP (bound to the loopback interface), as a subscriber of the game
+ * event bus (with the CONFLATE policy, so the spectators never slow the game down).
+ * <p>
+ * The display updates are kept in a mirror of the game's display and encoded as MESSAGE_BYTES messages:
+ * <pre>
+ * 0: type   (byte, GameEvent.Type ordinal + 1, or RESET)
+ * 1: player (unsigned byte, 255 if none; for COUNTDOWN, 1 if warning)
+ * 2: slot   (unsigned short, 65535 if none)
+ * 4: value  (int, the card for CARD_PLACED, the millis for COUNTDOWN, ELAPSED and FREEZE, the score for SCORE)
+ * </pre>
+ * A new spectator gets a full frame: a RESET message (players, slot: table size) followed by the messages that build
+ * the current display from an empty one. Then, once per tick, the deltas published since the previous tick (only the
+ * latest countdown, elapsed time, freeze and score of each player) are encoded once into a shared buffer that every
+ * spectator is sent from, with no copy. A spectator that cannot take a whole tick is conflated: it is sent the rest of
+ * the message it was cut in, then skips the deltas it missed and gets a new full frame instead.
+ */
+public class SpectatorServer implements Flow.Subscriber<GameEvent> {
+
+    public static final int MESSAGE_BYTES = 8;
+    public static final byte RESET = 0x7F;
+
+    private static final int NONE = 0xFF;
+    private static final int NO_SLOT = 0xFFFF;
+
+    private final Logger logger;
+    private final Config config;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+    private final long tickMillis;
+    private volatile boolean closed;
+
+    /**
+     * The mirror of the display (guarded by this).
+     */
+    private final int[] cards;
+    private final boolean[][] tokens;
+    private final int[] scores;
+    private final long[] freezes;
+    private long countdown = -1;
+    private boolean warn;
+    private long elapsed = -1;
+
+    /**
+     * The deltas published since the last tick (guarded by this), the position of the pending message of each
+     * conflation key (-1 if none), and the deltas of the current tick (used by the selector thread only).
+     */
+    private ByteBuffer pending = ByteBuffer.allocateDirect(1024 * MESSAGE_BYTES);
+    private final int[] conflated;
+    private ByteBuffer tick = ByteBuffer.allocateDirect(1024 * MESSAGE_BYTES);
+
+    /**
+     * The full frame of the current tick (used by the selector thread only).
+     */
+    private ByteBuffer full;
+
+    /**
+     * The number of spectators, of conflations of slow spectators and of bytes sent.
+     */
+    public final LongAdder spectators = new LongAdder();
+    public final LongAdder conflations = new LongAdder();
+    public final LongAdder bytes = new LongAdder();
+
+    /**
+     * The state of a spectator's connection (its selection key's attachment).
+     */
+    private static final class Spectator {
+        /**
+         * The rest of the message the last write was cut in.
+         */
+        final ByteBuffer carry = ByteBuffer.allocateDirect(MESSAGE_BYTES).limit(0);
+        final ByteBuffer[] gather = new ByteBuffer[2];
+        boolean needsFull = true;
+    }
+
+    public SpectatorServer(Logger logger, Config config) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        tickMillis = Math.max(1, 1000 / Math.max(1, config.spectatorFps));
+        cards = new int[config.tableSize];
+        Arrays.fill(cards, -1);
+        tokens = new boolean[config.tableSize][config.players];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+        conflated = new int[2 + 2 * config.players];
+        Arrays.fill(conflated, -1);
+        full = ByteBuffer.allocateDirect((2 + config.tableSize * (1 + config.players) + 2 * config.players + 2) * MESSAGE_BYTES);
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.spectatorPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "spectator-server");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+        logger.info("broadcasting to spectators at " + address());
+    }
+
+    /**
+     * @return - the address the server listens on.
+     */
+    public InetSocketAddress address() {
+        try {
+            return (InetSocketAddress) server.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void stop() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized void onNext(GameEvent event) {
+        switch (event.type) {
+            case CARD_PLACED:
+                cards[event.slot] = event.card;
+                break;
+            case CARD_REMOVED:
+                cards[event.slot] = -1;
+                break;
+            case TOKEN_PLACED:
+                tokens[event.slot][event.player] = true;
+                break;
+            case TOKEN_REMOVED:
+                tokens[event.slot][event.player] = false;
+                break;
+            case TOKENS_REMOVED:
+                for (boolean[] slot : tokens)
+                    Arrays.fill(slot, false);
+                break;
+            case SLOT_TOKENS_REMOVED:
+                Arrays.fill(tokens[event.slot], false);
+                break;
+            case COUNTDOWN:
+                countdown = event.value;
+                warn = event.card == 1;
+                break;
+            case ELAPSED:
+                elapsed = event.value;
+                break;
+            case FREEZE:
+                freezes[event.player] = event.value;
+                break;
+            case SCORE:
+                scores[event.player] = (int) event.value;
+                break;
+            case WINNERS:
+                for (int winner : event.cards)
+                    append(event.type, winner, -1, 0, -1);
+                return;
+            default: // game actions are not broadcast
+                return;
+        }
+        int key = event.conflationKey();
+        int value = event.type == GameEvent.Type.CARD_PLACED ? event.card : (int) event.value;
+        int player = event.type == GameEvent.Type.COUNTDOWN ? (warn ? 1 : 0) : event.player;
+        append(event.type, player, event.slot, value, key);
+    }
+
+    /**
+     * Appends a delta to the pending ones, replacing the pending delta with the same conflation key.
+     */
+    private void append(GameEvent.Type type, int player, int slot, int value, int key) {
+        int at = key >= 0 ? conflated[key] : -1;
+        if (at < 0) {
+            if (pending.remaining() < MESSAGE_BYTES) {
+                pending.flip();
+                pending = ByteBuffer.allocateDirect(pending.capacity() * 2).put(pending);
+            }
+            at = pending.position();
+            pending.position(at + MESSAGE_BYTES);
+            if (key >= 0) conflated[key] = at;
+        }
+        encode(pending, at, type.ordinal() + 1, player, slot, value);
+    }
+
+    private static void encode(ByteBuffer buffer, int at, int type, int player, int slot, int value) {
+        buffer.put(at, (byte) type);
+        buffer.put(at + 1, (byte) (player < 0 ? NONE : player));
+        buffer.putShort(at + 2, (short) (slot < 0 ? NO_SLOT : slot));
+        buffer.putInt(at + 4, value);
+    }
+
+    private static void put(ByteBuffer buffer, GameEvent.Type type, int player, int slot, long value) {
+        encode(buffer, buffer.position(), type.ordinal() + 1, player, slot, (int) value);
+        buffer.position(buffer.position() + MESSAGE_BYTES);
+    }
+
+    /**
+     * Encodes a full frame of the display (called with the lock held).
+     */
+    private void encodeFull() {
+        full.clear();
+        encode(full, 0, RESET, config.players, config.tableSize, 0);
+        full.position(MESSAGE_BYTES);
+        for (int slot = 0; slot < cards.length; ++slot) {
+            if (cards[slot] == -1) continue;
+            put(full, GameEvent.Type.CARD_PLACED, -1, slot, cards[slot]);
+            for (int player = 0; player < config.players; ++player)
+                if (tokens[slot][player]) put(full, GameEvent.Type.TOKEN_PLACED, player, slot, 0);
+        }
+        for (int player = 0; player < config.players; ++player) {
+            put(full, GameEvent.Type.SCORE, player, -1, scores[player]);
+            if (freezes[player] > 0) put(full, GameEvent.Type.FREEZE, player, -1, freezes[player]);
+        }
+        if (countdown >= 0) put(full, GameEvent.Type.COUNTDOWN, warn ? 1 : 0, -1, countdown);
+        if (elapsed >= 0) put(full, GameEvent.Type.ELAPSED, -1, -1, elapsed);
+        full.flip();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    private void run() {
+        try {
+            long next = System.currentTimeMillis() + tickMillis;
+            while (!closed) {
+                long wait = next - System.currentTimeMillis();
+                if (wait > 0) selector.select(wait);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else if (key.isReadable()) discardInput(key);
+                }
+                if (System.currentTimeMillis() >= next) {
+                    broadcast();
+                    next = System.currentTimeMillis() + tickMillis;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) logger.severe("spectator server failed: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys())
+                close(key);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Spectator());
+        spectators.increment();
+    }
+
+    private final ByteBuffer discarded = ByteBuffer.allocateDirect(256);
+
+    /**
+     * Spectators send nothing: reads only detect closed connections.
+     */
+    private void discardInput(SelectionKey key) {
+        try {
+            discarded.clear();
+            if (((SocketChannel) key.channel()).read(discarded) < 0) close(key);
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    /**
+     * Sends the deltas of the tick (or a full frame) to every spectator.
+     */
+    private void broadcast() {
+        boolean fullNeeded = false;
+        for (SelectionKey key : selector.keys())
+            if (key.attachment() instanceof Spectator && ((Spectator) key.attachment()).needsFull)
+                fullNeeded = true;
+        synchronized (this) {
+            ByteBuffer swap = tick;
+            tick = pending;
+            pending = swap;
+            pending.clear();
+            Arrays.fill(conflated, -1);
+            if (fullNeeded) encodeFull();
+        }
+        tick.flip();
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid() || !(key.attachment() instanceof Spectator)) continue;
+            Spectator spectator = (Spectator) key.attachment();
+            ByteBuffer frame = spectator.needsFull ? full : tick;
+            frame.rewind();
+            if (!frame.hasRemaining() && !spectator.carry.hasRemaining()) continue;
+            spectator.gather[0] = spectator.carry;
+            spectator.gather[1] = frame;
+            try {
+                long written = ((SocketChannel) key.channel()).write(spectator.gather);
+                bytes.add(written);
+                if (spectator.carry.hasRemaining()) {
+                    spectator.needsFull = true; // still behind: nothing more until the carry is sent
+                    continue;
+                }
+                if (frame.hasRemaining()) {
+                    // cut: keep the rest of the current message and conflate the rest of the frame
+                    int cut = frame.position() % MESSAGE_BYTES;
+                    spectator.carry.clear();
+                    if (cut != 0) {
+                        for (int i = 0; i < MESSAGE_BYTES - cut; ++i)
+                            spectator.carry.put(frame.get(frame.position() + i));
+                    }
+                    spectator.carry.flip();
+                    spectator.needsFull = true;
+                    conflations.increment();
+                } else {
+                    spectator.needsFull = false;
+                }
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        if (key.isValid() && key.attachment() instanceof Spectator) spectators.decrement();
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
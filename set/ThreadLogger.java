@@ -1,16 +1,71 @@
 package bguspl.set;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
+/**
+ * A thread that logs its start and termination and, when telemetry is enabled, reports its CPU time, lock contention,
+ * waiting and allocations (periodically and when it terminates).
+ */
 public class ThreadLogger extends Thread {
 
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The live threads being tracked.
+     */
+    private static final Set<ThreadLogger> live = ConcurrentHashMap.newKeySet();
+
+    private static volatile boolean telemetry;
+
     final Logger logger;
 
+    /**
+     * The time (System.nanoTime) the thread started running.
+     */
+    private volatile long startNanos;
+
     public ThreadLogger(Runnable target, String name, Logger logger) {
         super(target, name);
         this.logger = logger;
     }
 
+    /**
+     * Turns on the collection of thread telemetry.
+     *
+     * @param logger       - the logger to report to.
+     * @param reportMillis - the interval between periodic reports of all live threads (0 or less for no periodic
+     *                     reports; every thread still reports when it terminates).
+     */
+    public static void enableTelemetry(Logger logger, long reportMillis) {
+        if (threads.isThreadContentionMonitoringSupported()) threads.setThreadContentionMonitoringEnabled(true);
+        if (threads.isThreadCpuTimeSupported()) threads.setThreadCpuTimeEnabled(true);
+        if (threads.isThreadAllocatedMemorySupported()) threads.setThreadAllocatedMemoryEnabled(true);
+        telemetry = true;
+
+        if (reportMillis <= 0) return;
+        Thread reporter = new Thread(() -> {
+            while (telemetry) {
+                try {
+                    Thread.sleep(reportMillis);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+                for (ThreadLogger t : live) {
+                    String stats = t.stats();
+                    if (stats != null) logger.info(stats);
+                }
+            }
+        }, "thread-telemetry");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
     public void startWithLog() {
         logStart(logger, getName());
         super.start();
@@ -24,6 +79,43 @@ public class ThreadLogger extends Thread {
         }
     }
 
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        if (!telemetry) {
+            super.run();
+            return;
+        }
+        live.add(this);
+        try {
+            super.run();
+        } finally {
+            live.remove(this);
+            String stats = stats(); // must be sampled while the thread is still alive
+            if (stats != null) logger.info(stats);
+        }
+    }
+
+    /**
+     * Samples the telemetry of this thread.
+     *
+     * @return - a report line, or null if the thread is not alive.
+     */
+    String stats() {
+        long id = getId();
+        ThreadInfo info = threads.getThreadInfo(id);
+        if (info == null) return null;
+        long cpu = threads.getThreadCpuTime(id);
+        long user = threads.getThreadUserTime(id);
+        long allocated = threads.getThreadAllocatedBytes(id);
+        long wall = System.nanoTime() - startNanos;
+        return String.format(Locale.ROOT,
+                "thread %s stats: state: %s wall: %d ms cpu: %d ms (user %d ms, %.1f%%) blocked: %d times %d ms waited: %d times %d ms allocated: %d KB",
+                getName(), info.getThreadState(), wall / 1_000_000, cpu / 1_000_000, user / 1_000_000,
+                wall > 0 ? 100.0 * cpu / wall : 0.0, info.getBlockedCount(), info.getBlockedTime(),
+                info.getWaitedCount(), info.getWaitedTime(), allocated / 1024);
+    }
+
     public static void logStart(Logger logger, String name) {
         logger.info("thread " + name + " starting.");
     }
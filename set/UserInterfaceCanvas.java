@@ -0,0 +1,296 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Java Swing implementation of the UserInterface interface for big tables and many players.
+ * Instead of a component per cell and per player, the table (cards and token markers) and the scoreboard are each
+ * drawn by a single component, and only the visible part of the scrollable scoreboard is painted.
+ */
+public class UserInterfaceCanvas extends JFrame implements UserInterface {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MARKER_SIZE = 16;
+    private static final Color WINNER_BACKGROUND = new Color(255, 255, 255, 220);
+
+    private final Config config;
+    private final JLabel timerField;
+    private final TableCanvas tableCanvas;
+    private final Scoreboard scoreboard;
+
+    public UserInterfaceCanvas(Logger logger, EventLog events, Config config, Player[] players) {
+
+        this.config = config;
+        timerField = new JLabel(config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...", JLabel.CENTER);
+        timerField.setFont(new Font("Serif", Font.BOLD, config.fontSize));
+        tableCanvas = new TableCanvas(logger);
+        scoreboard = new Scoreboard();
+
+        Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+        JScrollPane tableScroll = new JScrollPane(tableCanvas);
+        tableScroll.setPreferredSize(new Dimension(
+                Math.min(tableCanvas.getPreferredSize().width + 20, screen.width * 3 / 4),
+                Math.min(tableCanvas.getPreferredSize().height + 20, screen.height * 3 / 4)));
+        JScrollPane scoreScroll = new JScrollPane(scoreboard, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scoreScroll.setPreferredSize(new Dimension(config.playerCellWidth + 20, tableScroll.getPreferredSize().height));
+        scoreScroll.getVerticalScrollBar().setUnitIncrement(config.playerCellHeight);
+
+        setLayout(new BorderLayout());
+        add(timerField, BorderLayout.NORTH);
+        add(tableScroll, BorderLayout.CENTER);
+        add(scoreScroll, BorderLayout.EAST);
+
+        setFocusable(true);
+        requestFocusInWindow();
+        pack();
+
+        setTitle("Set Card Game");
+        setLocationRelativeTo(null);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        addKeyListener(new InputManager(events, config, players));
+        addWindowListener(new WindowManager());
+
+        EventQueue.invokeLater(() -> setVisible(true));
+    }
+
+    private static Color playerColor(int player) {
+        return Color.getHSBColor((player * 0.618034f) % 1f, 0.8f, 0.9f);
+    }
+
+    private class TableCanvas extends JComponent {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CardImages images;
+
+        /**
+         * The image of each slot, resolved when the card is placed so painting never loads or waits for an image.
+         */
+        private final Image[] slots;
+        private final long[] tokens;
+        private final int tokenWords;
+
+        private TableCanvas(Logger logger) {
+            images = new CardImages(logger, config);
+            slots = new Image[config.tableSize];
+            Arrays.fill(slots, images.emptyCard());
+            tokenWords = (config.players + 63) / 64;
+            tokens = new long[config.tableSize * tokenWords];
+            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
+            setOpaque(true);
+        }
+
+        private void repaintSlot(int slot) {
+            repaint((slot % config.columns) * config.cellWidth, (slot / config.columns) * config.cellHeight,
+                    config.cellWidth, config.cellHeight);
+        }
+
+        private void setCard(int slot, int card) {
+            slots[slot] = card < 0 ? images.emptyCard() : images.card(card);
+            repaintSlot(slot);
+        }
+
+        private void setToken(int player, int slot, boolean placed) {
+            if (placed) tokens[slot * tokenWords + player / 64] |= 1L << player;
+            else tokens[slot * tokenWords + player / 64] &= ~(1L << player);
+            repaintSlot(slot);
+        }
+
+        private void clearTokens(int slot) {
+            Arrays.fill(tokens, slot * tokenWords, (slot + 1) * tokenWords, 0L);
+            repaintSlot(slot);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(getSize());
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            int firstRow = Math.max(0, clip.y / config.cellHeight);
+            int lastRow = Math.min(config.rows - 1, (clip.y + clip.height - 1) / config.cellHeight);
+            int firstColumn = Math.max(0, clip.x / config.cellWidth);
+            int lastColumn = Math.min(config.columns - 1, (clip.x + clip.width - 1) / config.cellWidth);
+            int markersPerCell = Math.max(1, (config.cellWidth - 4) / MARKER_SIZE);
+
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int slot = row * config.columns + column;
+                    int x = column * config.cellWidth, y = row * config.cellHeight;
+                    g.drawImage(slots[slot], x, y, this);
+                    g.setColor(Color.BLACK);
+                    g.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
+
+                    // token markers along the top of the cell (the rest are summarized as +n)
+                    int drawn = 0, hidden = 0;
+                    for (int i = 0; i < tokenWords; ++i)
+                        for (long w = tokens[slot * tokenWords + i]; w != 0; w &= w - 1) {
+                            int player = i * 64 + Long.numberOfTrailingZeros(w);
+                            if (drawn < markersPerCell - 1) {
+                                g.setColor(playerColor(player));
+                                g.fillOval(x + 2 + drawn * MARKER_SIZE, y + 2, MARKER_SIZE - 2, MARKER_SIZE - 2);
+                                ++drawn;
+                            } else ++hidden;
+                        }
+                    if (hidden > 0) {
+                        g.setColor(Color.BLACK);
+                        g.drawString("+" + hidden, x + 2 + drawn * MARKER_SIZE, y + MARKER_SIZE);
+                    }
+                }
+        }
+    }
+
+    private class Scoreboard extends JComponent {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The texts drawn for each player, formatted when they change rather than on every paint.
+         */
+        private final String[] names = config.playerNames.clone();
+        private final String[] scores = new String[config.players];
+        private final boolean[] frozen = new boolean[config.players];
+        private final Font font = new Font("Serif", Font.BOLD, Math.max(10, config.playerCellHeight * 3 / 5));
+        private String winnerText;
+
+        private Scoreboard() {
+            setPreferredSize(new Dimension(config.playerCellWidth, config.players * config.playerCellHeight));
+            setOpaque(true);
+            Arrays.fill(scores, "0");
+        }
+
+        private void repaintPlayer(int player) {
+            repaint(0, player * config.playerCellHeight, getWidth(), config.playerCellHeight);
+        }
+
+        private void setScore(int player, int score) {
+            scores[player] = Integer.toString(score);
+            repaintPlayer(player);
+        }
+
+        private void setFreeze(int player, long millies) {
+            String name = millies > 0 ? config.playerNames[player] + " (" + millies / 1000 + ")" : config.playerNames[player];
+            if (name.equals(names[player])) return;
+            names[player] = name;
+            frozen[player] = millies > 0;
+            repaintPlayer(player);
+        }
+
+        private void announceWinner(String text) {
+            winnerText = text;
+            repaint();
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(getSize());
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setFont(font);
+            FontMetrics metrics = g.getFontMetrics();
+            int baseline = (config.playerCellHeight + metrics.getAscent() - metrics.getDescent()) / 2;
+
+            // only the rows intersecting the visible (clipped) area are drawn
+            int first = Math.max(0, clip.y / config.playerCellHeight);
+            int last = Math.min(config.players - 1, (clip.y + clip.height - 1) / config.playerCellHeight);
+            for (int player = first; player <= last; ++player) {
+                int y = player * config.playerCellHeight;
+                g.setColor(playerColor(player));
+                g.fillOval(2, y + (config.playerCellHeight - MARKER_SIZE) / 2, MARKER_SIZE - 2, MARKER_SIZE - 2);
+                String name = names[player];
+                g.setColor(frozen[player] ? Color.RED : Color.BLACK);
+                g.drawString(name, MARKER_SIZE + 4, y + baseline);
+                String score = scores[player];
+                g.setColor(Color.BLACK);
+                g.drawString(score, getWidth() - metrics.stringWidth(score) - 4, y + baseline);
+            }
+
+            if (winnerText != null) {
+                Rectangle visible = getVisibleRect();
+                g.setColor(WINNER_BACKGROUND);
+                g.fillRect(visible.x, visible.y, visible.width, config.playerCellHeight * 2);
+                g.setColor(Color.BLACK);
+                g.drawString(winnerText, visible.x + 4, visible.y + config.playerCellHeight + baseline / 2);
+            }
+        }
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        tableCanvas.setCard(slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        tableCanvas.setCard(slot, -1);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        tableCanvas.setToken(player, slot, true);
+    }
+
+    @Override
+    public void removeTokens() {
+        for (int slot = 0; slot < config.tableSize; ++slot)
+            tableCanvas.clearTokens(slot);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        tableCanvas.clearTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        tableCanvas.setToken(player, slot, false);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        timerField.setText(UserInterfaceSwing.countdownText(millies, warn));
+        timerField.setForeground(warn ? Color.RED : Color.BLACK);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        timerField.setText(UserInterfaceSwing.elapsedText(millies));
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        scoreboard.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        scoreboard.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        List<String> names = Arrays.stream(players).mapToObj(id -> config.playerNames[id]).collect(Collectors.toList());
+        String text = players.length == 1 ? "THE WINNER IS: " + names.get(0) + "!!!"
+                : "IT IS A DRAW: " + String.join(" AND ", names) + " WON!!!";
+        timerField.setText(text);
+        timerField.setForeground(Color.BLACK);
+        scoreboard.announceWinner(text);
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+    }
+}
@@ -1,104 +1,353 @@
 package bguspl.set;
 
+import javax.swing.Timer;
+import java.awt.EventQueue;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class UserInterfaceDecorator implements UserInterface {
 
     private final Logger logger;
+    private final EventLog events;
+    private final Config config;
     private final Util util;
     private final UserInterface ui;
 
-    public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui) {
+    /**
+     * Coalesces the updates and flushes them to the user interface on the event dispatch thread (null if the updates
+     * are passed on directly).
+     */
+    private final Dispatcher dispatcher;
+
+    public UserInterfaceDecorator(Logger logger, EventLog events, Config config, Util util, UserInterface ui) {
         this.ui = ui;
         this.logger = logger;
+        this.events = events;
+        this.config = config;
         this.util = util;
 
         if (ui == null) System.out.println("running without a user interface. Check logs.");
+        dispatcher = ui != null && config.uiFps > 0 ? new Dispatcher() : null;
     }
 
     @Override
     public void placeCard(int card, int slot) {
-        logger.severe("placing card " + card + " in slot " + slot);
+        events.log(EventLog.Type.CARD_PLACED, card, slot);
         util.spin();
-        if (ui != null) ui.placeCard(card, slot);
+        if (dispatcher != null) dispatcher.placeCard(card, slot);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "placeCard");
+            ui.placeCard(card, slot);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void removeCard(int slot) {
-        logger.severe("removing card from slot " + slot);
+        events.log(EventLog.Type.CARD_REMOVED, slot);
         util.spin();
-        if (ui != null) ui.removeCard(slot);
+        if (dispatcher != null) dispatcher.removeCard(slot);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "removeCard");
+            ui.removeCard(slot);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        events.log(EventLog.Type.TOKEN_PLACED, player + 1, slot);
         util.spin();
-        if (ui != null) ui.placeToken(player, slot);
+        if (dispatcher != null) dispatcher.placeToken(player, slot);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "placeToken");
+            ui.placeToken(player, slot);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void removeTokens() {
-        logger.severe("removing all tokens");
+        events.log(EventLog.Type.TOKENS_REMOVED);
         util.spin();
-        if (ui != null) ui.removeTokens();
+        if (dispatcher != null) dispatcher.removeTokens();
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "removeTokens");
+            ui.removeTokens();
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void removeTokens(int slot) {
-        logger.severe("removing tokens from slot " + slot);
+        events.log(EventLog.Type.SLOT_TOKENS_REMOVED, slot);
         util.spin();
-        if (ui != null) ui.removeTokens(slot);
+        if (dispatcher != null) dispatcher.removeTokens(slot);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "removeTokens");
+            ui.removeTokens(slot);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        events.log(EventLog.Type.TOKEN_REMOVED, player + 1, slot);
         util.spin();
-        if (ui != null) ui.removeToken(player, slot);
+        if (dispatcher != null) dispatcher.removeToken(player, slot);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "removeToken");
+            ui.removeToken(player, slot);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
         if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
-        if (ui != null) ui.setCountdown(millies, warn);
+            events.log(EventLog.Type.COUNTDOWN, millies);
+        if (dispatcher != null) dispatcher.setCountdown(millies, warn);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "setCountdown");
+            ui.setCountdown(millies, warn);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void setElapsed(long millies) {
-        logger.severe("updating elapsed time to " + millies);
+        events.log(EventLog.Type.ELAPSED, millies);
         util.spin();
-        if (ui != null) ui.setElapsed(millies);
+        if (dispatcher != null) dispatcher.setElapsed(millies);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "setElapsed");
+            ui.setElapsed(millies);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        events.log(EventLog.Type.FREEZE, player + 1, millies);
         util.spin();
-        if (ui != null) ui.setFreeze(player, millies);
+        if (dispatcher != null) dispatcher.setFreeze(player, millies);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "setFreeze");
+            ui.setFreeze(player, millies);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        events.log(EventLog.Type.SCORE, player + 1, score);
         util.spin();
-        if (ui != null) ui.setScore(player, score);
+        if (dispatcher != null) dispatcher.setScore(player, score);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "setScore");
+            ui.setScore(player, score);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void announceWinner(int[] players) {
         List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
         logger.severe("announcing winner(s): " + String.join(", ", winners));
-        if (ui != null) ui.announceWinner(players);
+        if (dispatcher != null) dispatcher.announceWinner(players);
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "announceWinner");
+            ui.announceWinner(players);
+            GameEvents.commit(event);
+        }
     }
 
     @Override
     public void dispose() {
         logger.severe("disposing of user interface elements");
-        if (ui != null) ui.dispose();
+        if (dispatcher != null) dispatcher.dispose();
+        else if (ui != null) {
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "dispose");
+            ui.dispose();
+            GameEvents.commit(event);
+        }
+    }
+
+    /**
+     * Keeps the latest intended state of every slot, player and the timer, and flushes the differences from what is
+     * shown to the user interface on the event dispatch thread, at config.uiFps frames per second.
+     * The game threads only write the intended state, so they never wait for rendering, and updates that are
+     * overwritten between two frames are never rendered.
+     */
+    private class Dispatcher {
+
+        private static final int NO_CARD = -1;
+        private static final int TIMER_COUNTDOWN = 0;
+        private static final int TIMER_WARN = 1;
+        private static final int TIMER_ELAPSED = 2;
+
+        private final int words = (config.players + 63) / 64;
+
+        // the intended state (written by the game threads)
+        private final AtomicIntegerArray cards = new AtomicIntegerArray(config.tableSize);
+        private final AtomicLongArray tokens = new AtomicLongArray(config.tableSize * words);
+        private final AtomicLongArray freezes = new AtomicLongArray(config.players);
+        private final AtomicIntegerArray scores = new AtomicIntegerArray(config.players);
+        private final AtomicLong timer = new AtomicLong(Long.MIN_VALUE); // millis << 2 | timer mode
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        // the state shown (accessed by the event dispatch thread only)
+        private final int[] shownCards = new int[config.tableSize];
+        private final long[] shownTokens = new long[config.tableSize * words];
+        private final long[] shownFreezes = new long[config.players];
+        private final int[] shownScores = new int[config.players];
+        private long shownTimer = Long.MIN_VALUE;
+
+        private final Timer frames;
+
+        private Dispatcher() {
+            Arrays.fill(shownCards, NO_CARD);
+            for (int slot = 0; slot < config.tableSize; ++slot)
+                cards.set(slot, NO_CARD);
+            frames = new Timer(Math.max(1, 1000 / config.uiFps), e -> flush());
+            frames.setCoalesce(true);
+            frames.start();
+        }
+
+        private void placeCard(int card, int slot) {
+            cards.set(slot, card);
+            dirty.set(true);
+        }
+
+        private void removeCard(int slot) {
+            cards.set(slot, NO_CARD);
+            dirty.set(true);
+        }
+
+        private void placeToken(int player, int slot) {
+            tokens.getAndUpdate(slot * words + player / 64, bits -> bits | 1L << player);
+            dirty.set(true);
+        }
+
+        private void removeToken(int player, int slot) {
+            tokens.getAndUpdate(slot * words + player / 64, bits -> bits & ~(1L << player));
+            dirty.set(true);
+        }
+
+        private void removeTokens(int slot) {
+            for (int i = slot * words; i < (slot + 1) * words; ++i)
+                tokens.set(i, 0);
+            dirty.set(true);
+        }
+
+        private void removeTokens() {
+            for (int i = 0; i < tokens.length(); ++i)
+                tokens.set(i, 0);
+            dirty.set(true);
+        }
+
+        private void setCountdown(long millies, boolean warn) {
+            timer.set(millies << 2 | (warn ? TIMER_WARN : TIMER_COUNTDOWN));
+            dirty.set(true);
+        }
+
+        private void setElapsed(long millies) {
+            timer.set(millies << 2 | TIMER_ELAPSED);
+            dirty.set(true);
+        }
+
+        private void setFreeze(int player, long millies) {
+            freezes.set(player, millies);
+            dirty.set(true);
+        }
+
+        private void setScore(int player, int score) {
+            scores.set(player, score);
+            dirty.set(true);
+        }
+
+        private void announceWinner(int[] players) {
+            EventQueue.invokeLater(() -> {
+                flush();
+                ui.announceWinner(players);
+            });
+        }
+
+        private void dispose() {
+            EventQueue.invokeLater(() -> {
+                frames.stop();
+                ui.dispose();
+            });
+        }
+
+        /**
+         * Renders the differences between the intended and the shown state (on the event dispatch thread).
+         */
+        private void flush() {
+            if (!dirty.getAndSet(false)) return;
+            GameEvents.UiDispatch event = GameEvents.uiDispatch(config, "flush");
+
+            for (int slot = 0; slot < shownCards.length; ++slot) {
+                int card = cards.get(slot);
+                if (card == shownCards[slot]) continue;
+                if (card == NO_CARD) ui.removeCard(slot);
+                else ui.placeCard(card, slot);
+                shownCards[slot] = card;
+            }
+
+            for (int slot = 0; slot < config.tableSize; ++slot) {
+                boolean changed = false, empty = true;
+                for (int i = slot * words; i < (slot + 1) * words; ++i) {
+                    long bits = tokens.get(i);
+                    changed |= bits != shownTokens[i];
+                    empty &= bits == 0;
+                }
+                if (!changed) continue;
+                if (empty) {
+                    ui.removeTokens(slot);
+                    Arrays.fill(shownTokens, slot * words, (slot + 1) * words, 0);
+                    continue;
+                }
+                for (int i = slot * words; i < (slot + 1) * words; ++i) {
+                    long bits = tokens.get(i);
+                    for (long diff = bits ^ shownTokens[i]; diff != 0; diff &= diff - 1) {
+                        int bit = Long.numberOfTrailingZeros(diff);
+                        int player = (i - slot * words) * 64 + bit;
+                        if ((bits & 1L << bit) != 0) ui.placeToken(player, slot);
+                        else ui.removeToken(player, slot);
+                    }
+                    shownTokens[i] = bits;
+                }
+            }
+
+            long time = timer.get();
+            if (time != shownTimer) {
+                long millies = time >> 2;
+                int mode = (int) (time & 3);
+                if (mode == TIMER_ELAPSED) ui.setElapsed(millies);
+                else ui.setCountdown(millies, mode == TIMER_WARN);
+                shownTimer = time;
+            }
+
+            for (int player = 0; player < shownScores.length; ++player) {
+                long freeze = freezes.get(player);
+                if (freeze != shownFreezes[player]) {
+                    ui.setFreeze(player, freeze);
+                    shownFreezes[player] = freeze;
+                }
+                int score = scores.get(player);
+                if (score != shownScores[player]) {
+                    ui.setScore(player, score);
+                    shownScores[player] = score;
+                }
+            }
+            GameEvents.commit(event);
+        }
     }
 }
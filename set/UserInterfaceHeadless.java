@@ -0,0 +1,182 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A user interface with no display, for headless runs, tests and benchmarks.
+ * In NO_OP mode every call returns immediately. In RECORDING mode every call is appended to a preallocated buffer of
+ * primitive records (call, two int arguments and a long value) without locking, so tests and benchmarks can check what
+ * would have been shown. The recorded calls should be read after the game threads are done.
+ */
+public class UserInterfaceHeadless implements UserInterface {
+
+    public enum Mode {
+        NO_OP,
+        RECORDING
+    }
+
+    /**
+     * The recorded calls. Arguments that a call does not have are recorded as 0.
+     */
+    public enum Call {
+        PLACE_CARD,       // a: card, b: slot
+        REMOVE_CARD,      // b: slot
+        PLACE_TOKEN,      // a: player, b: slot
+        REMOVE_TOKENS,    // no arguments
+        REMOVE_SLOT_TOKENS, // b: slot
+        REMOVE_TOKEN,     // a: player, b: slot
+        SET_COUNTDOWN,    // a: 1 if warn, value: millies
+        SET_ELAPSED,      // value: millies
+        SET_FREEZE,       // a: player, value: millies
+        SET_SCORE,        // a: player, value: score
+        ANNOUNCE_WINNER,  // a: player (one record per winner), b: number of winners
+        DISPOSE           // no arguments
+    }
+
+    private static final Call[] calls = Call.values();
+
+    private final boolean recording;
+    private final byte[] call;
+    private final int[] a;
+    private final int[] b;
+    private final long[] value;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param mode     - whether to ignore or record the calls.
+     * @param capacity - the maximal number of calls to record (calls beyond it are counted as dropped).
+     */
+    public UserInterfaceHeadless(Mode mode, int capacity) {
+        recording = mode == Mode.RECORDING;
+        int size = recording ? capacity : 0;
+        call = new byte[size];
+        a = new int[size];
+        b = new int[size];
+        value = new long[size];
+    }
+
+    private void record(Call c, int first, int second, long v) {
+        if (!recording) return;
+        int index = next.getAndIncrement();
+        if (index >= call.length) {
+            dropped.increment();
+            return;
+        }
+        a[index] = first;
+        b[index] = second;
+        value[index] = v;
+        call[index] = (byte) c.ordinal();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        record(Call.PLACE_CARD, card, slot, 0);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        record(Call.REMOVE_CARD, 0, slot, 0);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        record(Call.PLACE_TOKEN, player, slot, 0);
+    }
+
+    @Override
+    public void removeTokens() {
+        record(Call.REMOVE_TOKENS, 0, 0, 0);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        record(Call.REMOVE_SLOT_TOKENS, 0, slot, 0);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        record(Call.REMOVE_TOKEN, player, slot, 0);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        record(Call.SET_COUNTDOWN, warn ? 1 : 0, 0, millies);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        record(Call.SET_ELAPSED, 0, 0, millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        record(Call.SET_FREEZE, player, 0, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        record(Call.SET_SCORE, player, 0, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        for (int player : players)
+            record(Call.ANNOUNCE_WINNER, player, players.length, 0);
+    }
+
+    @Override
+    public void dispose() {
+        record(Call.DISPOSE, 0, 0, 0);
+    }
+
+    /**
+     * @return - the number of recorded calls.
+     */
+    public int size() {
+        return Math.min(next.get(), call.length);
+    }
+
+    /**
+     * @return - the number of calls that did not fit in the buffer.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public Call call(int index) {
+        return calls[call[index]];
+    }
+
+    public int a(int index) {
+        return a[index];
+    }
+
+    public int b(int index) {
+        return b[index];
+    }
+
+    public long value(int index) {
+        return value[index];
+    }
+
+    /**
+     * @param c - a call.
+     * @return - the number of times the call was recorded.
+     */
+    public int count(Call c) {
+        int count = 0;
+        for (int i = 0, n = size(); i < n; ++i)
+            if (call[i] == c.ordinal()) ++count;
+        return count;
+    }
+
+    /**
+     * Discards the recorded calls (must not be called while calls are being recorded).
+     */
+    public void clear() {
+        next.set(0);
+        dropped.reset();
+    }
+}
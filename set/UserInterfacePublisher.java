@@ -0,0 +1,76 @@
+package bguspl.set;
+
+import static bguspl.set.GameEvent.Type.*;
+
+/**
+ * A UserInterface that publishes every display update as an event on the game event bus, where the actual user
+ * interface (see UserInterfaceSubscriber) is one subscriber among many.
+ */
+public class UserInterfacePublisher implements UserInterface {
+
+    private final GameEventBus bus;
+
+    public UserInterfacePublisher(GameEventBus bus) {
+        this.bus = bus;
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        bus.publish(GameEvent.of(CARD_PLACED, -1, slot, card, 0));
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        bus.publish(GameEvent.of(CARD_REMOVED, -1, slot, -1, 0));
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        bus.publish(GameEvent.of(TOKEN_PLACED, player, slot, -1, 0));
+    }
+
+    @Override
+    public void removeTokens() {
+        bus.publish(GameEvent.of(TOKENS_REMOVED, -1, -1, -1, 0));
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        bus.publish(GameEvent.of(SLOT_TOKENS_REMOVED, -1, slot, -1, 0));
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        bus.publish(GameEvent.of(TOKEN_REMOVED, player, slot, -1, 0));
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        bus.publish(GameEvent.of(COUNTDOWN, -1, -1, warn ? 1 : 0, millies));
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        bus.publish(GameEvent.of(ELAPSED, -1, -1, -1, millies));
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        bus.publish(GameEvent.of(FREEZE, player, -1, -1, millies));
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        bus.publish(GameEvent.of(SCORE, player, -1, -1, score));
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        bus.publish(GameEvent.of(WINNERS, -1, players.clone()));
+    }
+
+    @Override
+    public void dispose() {
+        bus.publish(GameEvent.of(DISPOSE, -1, -1, -1, 0));
+    }
+}
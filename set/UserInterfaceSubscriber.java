@@ -0,0 +1,71 @@
+package bguspl.set;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A game event bus subscriber that applies the display update events to a user interface.
+ */
+public class UserInterfaceSubscriber implements Flow.Subscriber<GameEvent> {
+
+    private final UserInterface ui;
+
+    public UserInterfaceSubscriber(UserInterface ui) {
+        this.ui = ui;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(GameEvent event) {
+        switch (event.type) {
+            case CARD_PLACED:
+                ui.placeCard(event.card, event.slot);
+                break;
+            case CARD_REMOVED:
+                ui.removeCard(event.slot);
+                break;
+            case TOKEN_PLACED:
+                ui.placeToken(event.player, event.slot);
+                break;
+            case TOKENS_REMOVED:
+                ui.removeTokens();
+                break;
+            case SLOT_TOKENS_REMOVED:
+                ui.removeTokens(event.slot);
+                break;
+            case TOKEN_REMOVED:
+                ui.removeToken(event.player, event.slot);
+                break;
+            case COUNTDOWN:
+                ui.setCountdown(event.value, event.card == 1);
+                break;
+            case ELAPSED:
+                ui.setElapsed(event.value);
+                break;
+            case FREEZE:
+                ui.setFreeze(event.player, event.value);
+                break;
+            case SCORE:
+                ui.setScore(event.player, (int) event.value);
+                break;
+            case WINNERS:
+                ui.announceWinner(event.cards);
+                break;
+            case DISPOSE:
+                ui.dispose();
+                break;
+            default: // game actions are not displayed
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+}
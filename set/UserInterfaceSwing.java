@@ -4,8 +4,6 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
@@ -28,11 +26,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(Logger logger, EventLog events, Config config, Player[] players) {
 
         this.config = config;
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(logger);
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
 
@@ -63,7 +61,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        addKeyListener(new InputManager(events, config, players));
         addWindowListener(new WindowManager());
 
         EventQueue.invokeLater(() -> setVisible(true));
@@ -73,13 +71,6 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private final JLabel timerField;
 
-        private String generateTime(long millies, boolean warn) {
-            if (warn)
-                return format("Remaining Time: %.2f", (double) millies / 1000.0f);
-            else
-                return format("Remaining Time: %d", millies / 1000L);
-        }
-
         private TimerPanel() {
             timerField = new JLabel(config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...");
 
@@ -91,50 +82,64 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
 
         private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
+            timerField.setText(countdownText(millies, warn));
             timerField.setForeground(warn ? Color.RED : Color.BLACK);
         }
 
         private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+            timerField.setText(elapsedText(millies));
         }
     }
 
+    /**
+     * @return - the text of the countdown timer (with hundredths of a second if warn).
+     */
+    static String countdownText(long millies, boolean warn) {
+        if (warn)
+            return format("Remaining Time: %.2f", (double) millies / 1000.0f);
+        else
+            return format("Remaining Time: %d", millies / 1000L);
+    }
+
+    /**
+     * @return - the text of the elapsed time timer.
+     */
+    static String elapsedText(long millies) {
+        return "Elapsed time: " + millies / 1000;
+    }
+
     private class GamePanel extends JLayeredPane {
 
-        private final Image emptyCard;
-        private final Image[] deck;
+        private final CardImages images;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
+        /**
+         * The players with tokens on each slot, as a bitmask of tokenWords longs per slot.
+         */
+        private final long[] tokens;
+        private final int tokenWords;
+        private final TokenLabels tokenLabels;
 
-        private GamePanel() {
+        private GamePanel(Logger logger) {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
             // init deck and load all pictures from png files
             assert config.featureSize < 10; // otherwise there will be naming conflicts
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
+            // start loading the image resources
+            images = new CardImages(logger, config);
 
             grid = new Image[config.rows][config.columns];
             tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
+            tokenWords = (config.players + 63) / 64;
+            tokens = new long[config.tableSize * tokenWords];
+            tokenLabels = new TokenLabels(tokenWords);
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
+                    grid[row][column] = images.emptyCard();
 
                     // init the JLabel selection overlay
                     tokenText[row][column] = new JLabel("");
@@ -148,27 +153,27 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             }
         }
 
+        private void repaintSlot(int row, int column) {
+            repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
+        }
+
         private void placeCard(int slot, int card) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+            grid[row][column] = images.card(card);
+            repaintSlot(row, column);
         }
 
         private void removeCard(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            grid[row][column] = images.emptyCard();
+            repaintSlot(row, column);
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            tokens[slot * tokenWords + player / 64] |= 1L << player;
+            updateTokenText(slot);
         }
 
         private void removeTokens() {
@@ -177,41 +182,109 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            Arrays.fill(tokens, slot * tokenWords, (slot + 1) * tokenWords, 0L);
+            updateTokenText(slot);
         }
 
         private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            tokens[slot * tokenWords + player / 64] &= ~(1L << player);
+            updateTokenText(slot);
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
-            }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+        private void updateTokenText(int slot) {
+            tokenText[slot / config.columns][slot % config.columns].setText(tokenLabels.text(tokens, slot * tokenWords));
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
+            // draw the card images of the cells in the dirty region only
+            Rectangle clip = g.getClipBounds();
+            int firstRow = 0, lastRow = config.rows - 1, firstColumn = 0, lastColumn = config.columns - 1;
+            if (clip != null) {
+                firstRow = Math.max(firstRow, clip.y / config.cellHeight);
+                lastRow = Math.min(lastRow, (clip.y + clip.height - 1) / config.cellHeight);
+                firstColumn = Math.max(firstColumn, clip.x / config.cellWidth);
+                lastColumn = Math.min(lastColumn, (clip.x + clip.width - 1) / config.cellWidth);
+            }
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++)
                     g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
         }
     }
 
+    /**
+     * A cache of the token overlay texts keyed by the bitmask of the players having tokens on a slot, so a token
+     * update only allocates the first time a combination of players appears.
+     */
+    private class TokenLabels {
+
+        private static final int MAX_ENTRIES = 1 << 12;
+
+        private final int words;
+        private long[][] keys = new long[64][];
+        private String[] texts = new String[64];
+        private int size;
+
+        private TokenLabels(int words) {
+            this.words = words;
+        }
+
+        private String text(long[] bits, int offset) {
+            boolean empty = true;
+            long hash = 0;
+            for (int i = 0; i < words; ++i) {
+                empty &= bits[offset + i] == 0;
+                hash = hash * 0x9E3779B97F4A7C15L + bits[offset + i];
+            }
+            if (empty) return "";
+
+            int mask = keys.length - 1;
+            int index = (int) (hash ^ hash >>> 32) & mask;
+            for (; keys[index] != null; index = (index + 1) & mask)
+                if (Arrays.equals(keys[index], 0, words, bits, offset, offset + words))
+                    return texts[index];
+
+            if (size >= MAX_ENTRIES) { // too many combinations, start over
+                keys = new long[keys.length][];
+                texts = new String[texts.length];
+                size = 0;
+                return text(bits, offset);
+            }
+            String text = generate(bits, offset);
+            keys[index] = Arrays.copyOfRange(bits, offset, offset + words);
+            texts[index] = text;
+            if (++size * 2 > keys.length) grow();
+            return text;
+        }
+
+        private String generate(long[] bits, int offset) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < words; ++i)
+                for (long w = bits[offset + i]; w != 0; w &= w - 1) {
+                    if (sb.length() > 0) sb.append(", ");
+                    sb.append(config.playerNames[i * 64 + Long.numberOfTrailingZeros(w)]);
+                }
+            return sb.toString();
+        }
+
+        private void grow() {
+            long[][] oldKeys = keys;
+            String[] oldTexts = texts;
+            keys = new long[oldKeys.length * 2][];
+            texts = new String[oldTexts.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldKeys[i] == null) continue;
+                long hash = 0;
+                for (long w : oldKeys[i]) hash = hash * 0x9E3779B97F4A7C15L + w;
+                int index = (int) (hash ^ hash >>> 32) & mask;
+                while (keys[index] != null) index = (index + 1) & mask;
+                keys[index] = oldKeys[i];
+                texts[index] = oldTexts[i];
+            }
+        }
+    }
+
     private class PlayersPanel extends JPanel {
 
         private final JLabel[][] playersTable;
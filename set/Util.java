@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.SplittableRandom;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -40,6 +41,21 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * @return - the seed the random streams are derived from (config.seed unless given otherwise).
+     */
+    long seed();
+
+    /**
+     * Creates the random number generator of a stream derived from seed().
+     * Stream 0 belongs to the dealer and stream id + 1 belongs to player id, so the values drawn by one stream do not
+     * depend on how many values the other streams have consumed.
+     *
+     * @param stream - the stream number.
+     * @return - a new generator for the stream.
+     */
+    SplittableRandom randomStream(int stream);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
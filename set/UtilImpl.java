@@ -3,6 +3,7 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
@@ -12,9 +13,18 @@ import java.util.stream.IntStream;
 public class UtilImpl implements Util {
 
     private final Config config;
+    private final long seed;
 
     public UtilImpl(Config config) {
+        this(config, config.seed);
+    }
+
+    /**
+     * @param seed - the seed of the random streams (instead of config.seed).
+     */
+    public UtilImpl(Config config, long seed) {
         this.config = config;
+        this.seed = seed;
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -90,6 +100,19 @@ public class UtilImpl implements Util {
         return sets;
     }
 
+    @Override
+    public long seed() {
+        return seed;
+    }
+
+    @Override
+    public SplittableRandom randomStream(int stream) {
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int i = 0; i < stream; ++i)
+            root.split();
+        return root.split();
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
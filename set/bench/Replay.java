@@ -0,0 +1,334 @@
+package bguspl.set.bench;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameEvent;
+import bguspl.set.GameEventBus;
+import bguspl.set.GameJournal;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UserInterfacePublisher;
+import bguspl.set.UserInterfaceSubscriber;
+import bguspl.set.UtilImpl;
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.ScriptedDealing;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.Flow;
+import java.util.logging.Logger;
+
+import static bguspl.set.GameEvent.Type.*;
+
+/**
+ * Replays a game journal (see GameJournal) as fast as possible, as a repeatable macro benchmark of the dealer and the
+ * players built from recorded games. The recorded card placements are dealt by a ScriptedDealing, the key presses are
+ * fed into Player.keyPressed and the recorded reshuffles end the turns; there are no table delays, freezes or
+ * countdown and the user interface is headless.
+ * <p>
+ * The journal records the events in the order the game threads ordered them under the game's locks (see
+ * GameEventBus.reserve), so each token placed or removed comes after everything that happened to the table before the
+ * player acted on it. The driver re-applies the presses that placed or removed a token in that order, each one once the
+ * replayed game published every output recorded before it, and keeps pressing until the player accepts it (the dealer
+ * may still be releasing the player from its previous claim). The claims are judged in the order of their recorded
+ * verdicts (see GatedQueue). The presses that had no effect in the recording are not replayed. Nothing is given up on
+ * after a timeout: the stall time only bounds the wait for an output that never comes, which means the replay diverged
+ * from the recording, and then the replay stops and says where.
+ * At the end each player's verdicts are compared with the recorded ones and the wall time is reported.
+ * Usage: java -cp classes bguspl.set.bench.Replay [journal directory or segment] [stall millis]
+ */
+public class Replay implements Flow.Subscriber<GameEvent> {
+
+    /**
+     * The outputs the inputs wait for. The scores are not among them: the dealer scores a point before it publishes the
+     * verdict, so a score may be recorded before inputs that the replayed dealer must not judge the claim before.
+     */
+    private static final GameEvent.Type[] OUTPUTS = {CARD_PLACED, CARD_REMOVED, TOKEN_PLACED, TOKENS_REMOVED,
+            SLOT_TOKENS_REMOVED, TOKEN_REMOVED, CLAIM, VERDICT, RESHUFFLE};
+
+    /**
+     * How long to wait for an output or for a player to accept a key press before declaring the replay diverged.
+     */
+    private final long stallMillis;
+
+    /**
+     * The number of events of each type the replayed game published (guarded by this).
+     */
+    private final long[] observed = new long[GameEvent.Type.values().length];
+
+    /**
+     * The verdicts of each player (recorded and replayed) and the number of verdicts replayed.
+     */
+    private final int[][] recordedVerdicts;
+    private final int[][] replayedVerdicts;
+    private final int[] replayed;
+
+    private Replay(List<GameJournal.Record> records, int players, long stallMillis) {
+        this.stallMillis = stallMillis;
+        int[] counts = new int[players];
+        for (GameJournal.Record record : records)
+            if (record.type == VERDICT) ++counts[record.player];
+        recordedVerdicts = new int[players][];
+        replayedVerdicts = new int[players][];
+        for (int player = 0; player < players; ++player) {
+            recordedVerdicts[player] = new int[counts[player]];
+            replayedVerdicts[player] = new int[counts[player]];
+        }
+        replayed = new int[players];
+        int[] next = new int[players];
+        for (GameJournal.Record record : records)
+            if (record.type == VERDICT) recordedVerdicts[record.player][next[record.player]++] = record.value;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized void onNext(GameEvent event) {
+        ++observed[event.type.ordinal()];
+        if (event.type == VERDICT) {
+            int n = replayed[event.player]++;
+            if (n < replayedVerdicts[event.player].length) replayedVerdicts[event.player][n] = (int) event.value;
+        }
+        notifyAll();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+
+    /**
+     * Waits until the replayed game published at least the expected number of outputs of each type.
+     *
+     * @return - false if an output did not come within the stall time (the replay diverged from the recording).
+     */
+    private synchronized boolean catchUp(long[] expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + stallMillis;
+        for (GameEvent.Type type : OUTPUTS)
+            while (observed[type.ordinal()] < expected[type.ordinal()]) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                wait(left);
+            }
+        return true;
+    }
+
+    /**
+     * Presses the key until the player accepts it.
+     *
+     * @return - false if the player did not accept it within the stall time (the replay diverged from the recording).
+     */
+    private boolean press(Player player, int slot) {
+        long deadline = System.currentTimeMillis() + stallMillis;
+        while (!player.keyPressed(slot)) {
+            if (System.currentTimeMillis() > deadline) return false;
+            Thread.yield();
+        }
+        return true;
+    }
+
+    /**
+     * The dealer's claim queue, handing the claims to the dealer in the order of their recorded verdicts, and only
+     * once the driver reached the verdict: the players act on the inputs recorded before a verdict before it changes
+     * the table, and two claims racing to the dealer are judged in the recorded order. A claim the recording never
+     * judged (the turn ended first) stays in the queue until the reshuffle clears it, as it did in the recording.
+     */
+    private static final class GatedQueue extends LinkedList<int[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Dealer dealer;
+
+        /**
+         * The players of the recorded verdicts, the number of verdicts the driver reached and the next verdict.
+         */
+        private final int[] players;
+        private volatile int allowed;
+        private volatile int next;
+
+        private GatedQueue(Dealer dealer, int[] players) {
+            this.dealer = dealer;
+            this.players = players;
+        }
+
+        private void allow(int verdicts) {
+            allowed = verdicts;
+            synchronized (dealer) {
+                dealer.notifyAll();
+            }
+        }
+
+        private int indexOfNext() {
+            if (super.isEmpty() || next >= allowed) return -1;
+            if (next >= players.length) return 0; // past the recording
+            for (int i = 0; i < size(); ++i)
+                if (get(i)[2][0] == players[next]) return i;
+            return -1;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return indexOfNext() < 0;
+        }
+
+        @Override
+        public int[][] peek() {
+            int index = indexOfNext();
+            return index < 0 ? null : get(index);
+        }
+
+        @Override
+        public int[][] remove() {
+            int index = indexOfNext();
+            if (index < 0) throw new NoSuchElementException();
+            ++next;
+            return remove(index);
+        }
+    }
+
+    /**
+     * @return - the number of verdicts replayed as recorded.
+     */
+    private synchronized int matchedVerdicts() {
+        int matched = 0;
+        for (int player = 0; player < recordedVerdicts.length; ++player)
+            for (int i = 0; i < Math.min(replayed[player], recordedVerdicts[player].length); ++i)
+                if (replayedVerdicts[player][i] == recordedVerdicts[player][i]) ++matched;
+        return matched;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String journal = args.length > 0 ? args[0] : "journal";
+        long stallMillis = args.length > 1 ? Long.parseLong(args[1]) : 10000;
+
+        // read the whole journal up front so that reading does not slow the replay down
+        List<GameJournal.Record> records = new ArrayList<>();
+        GameJournal.Header header;
+        try (GameJournal.Reader reader = new GameJournal.Reader(GameJournal.Reader.segments(Paths.get(journal)))) {
+            header = reader.header();
+            while (reader.hasNext()) records.add(reader.next());
+        }
+        if (header == null) throw new IOException("empty journal " + journal);
+
+        Properties p = new Properties();
+        p.setProperty("LogLevel", "OFF");
+        p.setProperty("Seed", Long.toString(header.seed));
+        p.setProperty("FeatureSize", Integer.toString(header.featureSize));
+        p.setProperty("FeatureCount", Integer.toString(header.featureCount));
+        p.setProperty("Rows", Integer.toString(header.rows));
+        p.setProperty("Columns", Integer.toString(header.columns));
+        p.setProperty("HumanPlayers", "0");
+        p.setProperty("ComputerPlayers", Integer.toString(header.players));
+        p.setProperty("TurnTimeoutSeconds", "1000000000"); // the recorded reshuffles end the turns
+        p.setProperty("DeadTableGraceSeconds", "-1");
+        p.setProperty("TurnTimeoutWarningSeconds", "0");
+        p.setProperty("PointFreezeSeconds", "0");
+        p.setProperty("PenaltyFreezeSeconds", "0");
+        p.setProperty("TableDelaySeconds", "0");
+        p.setProperty("EndGamePauseSeconds", "0");
+        Logger logger = Logger.getLogger("SetReplayLogger");
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, p);
+
+        // the recorded placements, the presses and the reshuffle triggers (the first token removal of a reshuffle)
+        int placements = 0, presses = 0;
+        for (GameJournal.Record record : records)
+            if (record.type == CARD_PLACED) ++placements;
+        int[] slots = new int[placements], cards = new int[placements];
+        boolean[] triggers = new boolean[records.size()];
+        int trigger = -1;
+        placements = 0;
+        for (int i = 0; i < records.size(); ++i) {
+            GameJournal.Record record = records.get(i);
+            if (record.type == CARD_PLACED) {
+                slots[placements] = record.slot;
+                cards[placements++] = record.card;
+            } else if (record.type == KEY_PRESSED) {
+                ++presses;
+            } else if (record.type == TOKENS_REMOVED && trigger < 0) {
+                trigger = i;
+            } else if (record.type == RESHUFFLE) {
+                if (trigger >= 0) triggers[trigger] = true;
+                trigger = -1;
+            }
+        }
+
+        Replay replay = new Replay(records, config.players, stallMillis);
+        GameEventBus bus = new GameEventBus();
+        bus.subscribe(replay, GameEventBus.Policy.BLOCK, GameEventBus.DEFAULT_CAPACITY, GameEventBus.DEFAULT_BATCH);
+        bus.subscribe(new UserInterfaceSubscriber(new UserInterfaceHeadless(UserInterfaceHeadless.Mode.NO_OP, 0)),
+                GameEventBus.Policy.CONFLATE, GameEventBus.DEFAULT_CAPACITY, GameEventBus.DEFAULT_BATCH);
+        Env env = new Env(logger, config, new UserInterfacePublisher(bus), new UtilImpl(config), bus);
+
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        ScriptedDealing dealing = new ScriptedDealing(config.tableSize, slots, cards);
+        Dealer dealer = new Dealer(env, table, players, dealing);
+        int[] verdictPlayers = records.stream().filter(record -> record.type == VERDICT).mapToInt(record -> record.player).toArray();
+        GatedQueue claims = new GatedQueue(dealer, verdictPlayers);
+        dealer.requests = claims;
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+
+        long start = System.nanoTime();
+        Thread dealerThread = new Thread(dealer, "dealer");
+        dealerThread.start();
+
+        long[] expected = new long[GameEvent.Type.values().length];
+        int replayedPresses = 0;
+        int diverged = -1;
+        for (int i = 0; i < records.size() && diverged < 0; ++i) {
+            GameJournal.Record record = records.get(i);
+            if (record.type == TOKEN_PLACED || record.type == TOKEN_REMOVED) {
+                if (!replay.catchUp(expected) || !replay.press(players[record.player], record.slot)) diverged = i;
+                ++replayedPresses;
+            } else if (triggers[i]) {
+                if (!replay.catchUp(expected)) diverged = i;
+                dealer.reshuffle();
+            }
+            ++expected[record.type.ordinal()];
+            if (record.type == VERDICT) claims.allow((int) expected[VERDICT.ordinal()]);
+        }
+        claims.allow(Integer.MAX_VALUE);
+        if (diverged < 0 && !replay.catchUp(expected)) diverged = records.size();
+        dealerThread.join(stallMillis);
+        boolean finished = !dealerThread.isAlive();
+        if (!finished) {
+            dealer.terminate();
+            dealerThread.join();
+        }
+        long wallNanos = System.nanoTime() - start;
+        bus.close(stallMillis);
+
+        int verdicts = 0;
+        for (int[] recorded : replay.recordedVerdicts) verdicts += recorded.length;
+        int matched = replay.matchedVerdicts();
+        System.out.println(header);
+        System.out.printf("replayed %d records (%d key presses, %d of them with an effect, %d verdicts) in %.1f ms (%.0f presses/s)%n",
+                records.size(), presses, replayedPresses, verdicts, wallNanos / 1e6, replayedPresses / (wallNanos / 1e9));
+        System.out.printf("verdicts: %d/%d matched, %d replayed; dealing misses: %d%s%n",
+                matched, verdicts, replay.replayedCount(), dealing.misses(), finished ? "" : "; the game did not end by itself");
+        if (diverged >= 0)
+            System.out.println("the replay diverged from the recording at record " + diverged
+                    + (diverged < records.size() ? " (" + records.get(diverged) + ")" : " (the end)"));
+        if (diverged >= 0 || matched != verdicts || replay.replayedCount() != verdicts) System.exit(1);
+    }
+
+    private synchronized int replayedCount() {
+        int count = 0;
+        for (int n : replayed) count += n;
+        return count;
+    }
+}
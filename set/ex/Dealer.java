@@ -1,10 +1,20 @@
 package bguspl.set.ex;
 
+import bguspl.set.ClaimLatencies.Stage;
 import bguspl.set.Env;
+import bguspl.set.GameEvent;
+import bguspl.set.GameEvents;
+import bguspl.set.LatencyHistogram;
+import bguspl.set.ThreadLogger;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -36,12 +46,64 @@ public class Dealer implements Runnable {
     public volatile boolean terminate;
 
     /**
-     * The time when the dealer needs to reshuffle the deck due to turn timeout.
+     * The time when the dealer needs to reshuffle the deck due to turn timeout (Long.MAX_VALUE if the turn has no
+     * timeout and the table has a set).
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
+    /**
+     * The time of the last deal or point (shown as the elapsed time when config.turnTimeoutMillis is 0).
+     */
+    private long lastActionTime;
+
+    /**
+     * How often the countdown display is refreshed during the warning, when it shows hundredths of a second.
+     */
+    private static final long WARNING_REFRESH_MILLIS = 10;
+
+    /**
+     * True iff the table should be reshuffled now, regardless of the countdown (see reshuffle).
+     */
+    private volatile boolean reshuffleRequested;
+
+    /**
+     * Chooses the cards drawn from the deck.
+     */
+    private final DealingStrategy dealing;
+
+    /**
+     * Writes the snapshots of the game (null if the game is not snapshotted).
+     */
+    private final GameSnapshot.Writer snapshots;
+
+    /**
+     * The time the last snapshot was taken.
+     */
+    private long snapshotTime;
+
+    /**
+     * True iff the game changed since the last snapshot (taken by the timer loop once the snapshot interval is over).
+     */
+    private boolean snapshotDirty;
+
+    /**
+     * The time left until the reshuffle of the turn resumed from a snapshot (-1 if none).
+     */
+    private long resumedTimeLeft = -1;
+
+    /**
+     * The executor the players' loops are submitted to (null if they run on threads of their own). Each loop holds one
+     * of its threads for as long as it runs.
+     */
+    final ExecutorService executor;
+
     public volatile Queue<int[][]> requests;
 
+    /**
+     * The time (System.nanoTime) each player's claim entered the requests queue.
+     */
+    private final long[] enqueuedNanos;
+
     private Semaphore sem;
 
     public int[] setToRemove;
@@ -49,11 +111,34 @@ public class Dealer implements Runnable {
     public volatile boolean cardsOnTable;
 
     public Dealer(Env env, Table table, Player[] players) {
+        this(env, table, players, DealingStrategy.of(env, table));
+    }
+
+    public Dealer(Env env, Table table, Player[] players, DealingStrategy dealing) {
+        this(env, table, players, dealing, null);
+    }
+
+    /**
+     * @param executor - the executor the players (and their ai threads) run on, instead of threads of their own (null
+     *                 for threads of their own). The tasks block while waiting, so it must not limit the number of
+     *                 threads (e.g. a cached thread pool, whose threads are reused by the following games).
+     */
+    public Dealer(Env env, Table table, Player[] players, DealingStrategy dealing, ExecutorService executor) {
         this.env = env;
+        this.executor = executor;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        if (table.state != null) {
+            deck = table.state.deck();
+            for (int card = 0; card < env.config.deckSize; ++card)
+                deck.add(card);
+        } else {
+            deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        }
+        this.dealing = dealing;
+        snapshots = env.config.snapshotFile.isEmpty() ? null : new GameSnapshot.Writer(env.logger, Paths.get(env.config.snapshotFile));
         requests = new LinkedList<>();
+        enqueuedNanos = new long[players.length];
         sem = new Semaphore(1, true);//alkfjalkcjblerdfvsd
         setToRemove = new int[3];//represents slots number of the cards that need to be removed,
         // after a set was claimed.
@@ -68,33 +153,55 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
-        Thread[] threadsArray = new Thread[env.config.players];
-        //initializing and starting player threads
-        //placeCardsOnTable();
-        for (int i = 0; i < env.config.players; i++) {
-            threadsArray[i] = new Thread(players[i], env.config.playerNames[i]);
-            threadsArray[i].start();
-            try {
-                Thread.currentThread().sleep(10);
-            } catch (InterruptedException ignored) {
+        ThreadLogger[] threadsArray = new ThreadLogger[env.config.players];
+        Future<?>[] tasks = new Future<?>[env.config.players];
+        boolean finished = false;
+        try {
+            //initializing and starting player threads
+            //placeCardsOnTable();
+            for (int i = 0; i < env.config.players; i++) {
+                if (executor != null) {
+                    tasks[i] = submit(players[i], env.config.playerNames[i]);
+                } else {
+                    threadsArray[i] = new ThreadLogger(players[i], env.config.playerNames[i], env.logger);
+                    threadsArray[i].startWithLog();
+                }
+                try {
+                    Thread.currentThread().sleep(10);
+                } catch (InterruptedException ignored) {
+                }
             }
-        }
-        while (!shouldFinish()) {
-            placeCardsOnTable();
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-            timerLoop();
-            updateTimerDisplay(false);
-            removeAllCardsFromTable();
-        }
-        //terminate the player threads.
-        for (int i = env.config.players - 1; i >= 0; i--) {
-            players[i].terminate();
-            players[i].join();
+            while (!shouldFinish()) {
+                placeCardsOnTable();
+                lastActionTime = System.currentTimeMillis();
+                reshuffleTime = env.config.turnTimeoutMillis <= 0 ? Long.MAX_VALUE
+                        : lastActionTime + (resumedTimeLeft >= 0 ? resumedTimeLeft : env.config.turnTimeoutMillis);
+                resumedTimeLeft = -1;
+                checkDeadTable();
+                takeSnapshot(true);
+                timerLoop();
+                updateTimerDisplay(false);
+                removeAllCardsFromTable();
+            }
+            finished = true;
+        } finally {
+            // the players are stopped even if the dealer failed, so they do not hold on to their threads
+            for (int i = env.config.players - 1; i >= 0; i--) {
+                players[i].terminate();
+                try {
+                    if (executor != null) {
+                        if (tasks[i] != null) join(tasks[i], env.config.playerNames[i]);
+                    } else if (threadsArray[i] != null) threadsArray[i].joinWithLog();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            if (snapshots != null) snapshots.close(finished && !terminate); // a finished game has nothing to resume
         }
         //did we stop the pressing simulation thread
         //is it actually neccesary to stop them
 
         announceWinners();
+        env.logger.info(env.latencies.report(env.config.playerNames));
 
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
     }
@@ -103,12 +210,12 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && !reshuffleRequested && System.currentTimeMillis() < reshuffleTime) {
             sleepUntilWokenOrTimeout();
             boolean isSet = false;
             boolean cardIsOnTable = true;
             int playerId=-1;
-            if (!terminate && System.currentTimeMillis() < reshuffleTime /*&& !requests.isEmpty() && requests.peek() != null*/) {
+            if (!terminate && !reshuffleRequested && System.currentTimeMillis() < reshuffleTime /*&& !requests.isEmpty() && requests.peek() != null*/) {
                 int[][] arr = new int[3][3];
                 for (int i = 0; i < 3; i++)
                     for (int j = 0; j < 3; j++)
@@ -116,6 +223,9 @@ public class Dealer implements Runnable {
                 synchronized (this) {
                     requests.remove();
                 }
+                long dequeued = System.nanoTime();
+                env.metrics.claimsDequeued.increment();
+                GameEvents.ClaimJudged judged = GameEvents.claimJudged(env.config);
                 playerId=arr[2][0];
                 int[] checkSet = new int[3];
                 for (int i = 0; i < 3; i++) {
@@ -125,23 +235,40 @@ public class Dealer implements Runnable {
                     }
                 }
                 isSet = env.util.testSet(checkSet);
+                if (!cardIsOnTable)
+                    env.metrics.claimsStale.increment();
                 if (isSet && cardIsOnTable) {//set claimed
+                    env.metrics.claimsAccepted.increment();
                     players[arr[2][0]].point();
                     for (int g = 0; g < 3; g++) {
                         setToRemove[g] = arr[1][g];
                     }
                 } else if (cardIsOnTable) {//wrong set
+                    env.metrics.claimsRejected.increment();
                     players[arr[2][0]].penalty();
                 }
-                synchronized (players[arr[2][0]]) {
-                    players[arr[2][0]].incomingActions.clear();
+                players[arr[2][0]].clearActions();
+                long verdict = System.nanoTime();
+                if (env.bus.hasSubscribers())
+                    env.bus.publish(GameEvent.of(GameEvent.Type.VERDICT, playerId, -1, -1, !cardIsOnTable ? -1 : isSet ? 1 : 0));
+                if (judged != null) {
+                    judged.player = playerId;
+                    judged.verdict = !cardIsOnTable ? "stale" : isSet ? "point" : "penalty";
+                    judged.commit();
                 }
-
+                env.latencies.record(playerId, Stage.INPUT, enqueuedNanos[playerId] - players[playerId].claimPressNanos);
+                env.latencies.record(playerId, Stage.QUEUE, dequeued - enqueuedNanos[playerId]);
+                env.latencies.record(playerId, Stage.VALIDATION, verdict - dequeued);
+                env.latencies.record(playerId, Stage.TOTAL, verdict - players[playerId].claimPressNanos);
             }
             updateTimerDisplay(isSet && cardIsOnTable);
             if (isSet && cardIsOnTable) {
+                long refill = System.nanoTime();
                 removeCardsFromTable();
                 placeCardsOnTable();
+                checkDeadTable();
+                env.latencies.record(playerId, Stage.REFILL, System.nanoTime() - refill);
+                takeSnapshot(false);
             }
             if (playerId!=-1) {
                 synchronized (players[playerId]) {
@@ -149,6 +276,41 @@ public class Dealer implements Runnable {
                     players[playerId].wakeUpPlayer();
                 }
             }
+            if (snapshotDirty) takeSnapshot(false); // a point scored within the snapshot interval
+        }
+    }
+
+    /**
+     * Runs a task of the game on the executor, under the name of its thread for as long as it runs.
+     *
+     * @param task - the task.
+     * @param name - the name of the task's thread.
+     * @return - the future of the task.
+     */
+    Future<?> submit(Runnable task, String name) {
+        ThreadLogger.logStart(env.logger, name);
+        return executor.submit(() -> {
+            Thread thread = Thread.currentThread();
+            String pooled = thread.getName();
+            thread.setName(name);
+            try {
+                task.run();
+            } finally {
+                thread.setName(pooled);
+            }
+        });
+    }
+
+    /**
+     * Waits for a task submitted to the executor to finish.
+     */
+    void join(Future<?> task, String name) throws InterruptedException {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            env.logger.severe("thread " + name + " failed: " + e.getCause());
+        } finally {
+            ThreadLogger.logStop(env.logger, name);
         }
     }
 
@@ -158,6 +320,90 @@ public class Dealer implements Runnable {
     public void terminate() {
         // TODO implement
         terminate = true;
+        synchronized (this) {
+            notifyAll(); // the dealer may be waiting with no timer to refresh
+        }
+    }
+
+    /**
+     * Ends the current turn as if the countdown timed out: all the cards are returned to the deck and a new table is
+     * dealt (used by the replay driver, the recorded reshuffles being the only turn ends).
+     */
+    public void reshuffle() {
+        reshuffleRequested = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Resumes a game from a snapshot: deals the snapshot's cards, restores the deck and the scores, and makes the
+     * first turn end when the snapshotted turn would have. Must be called before the dealer thread starts.
+     *
+     * @param snapshot - the snapshot to resume from.
+     * @throws IllegalArgumentException - if the snapshot does not match the game's configuration.
+     */
+    public void restore(GameSnapshot snapshot) {
+        boolean[] seen = new boolean[env.config.deckSize];
+        boolean valid = snapshot.slotToCard.length == env.config.tableSize && snapshot.scores.length == players.length;
+        for (int i = 0; valid && i < snapshot.slotToCard.length + snapshot.deck.length; ++i) {
+            int card = i < snapshot.slotToCard.length ? snapshot.slotToCard[i] : snapshot.deck[i - snapshot.slotToCard.length];
+            if (card == -1 && i < snapshot.slotToCard.length) continue;
+            valid = card >= 0 && card < seen.length && !seen[card];
+            if (valid) seen[card] = true;
+        }
+        if (!valid) throw new IllegalArgumentException("the snapshot does not match the game configuration");
+
+        deck.clear();
+        for (int card : snapshot.deck)
+            deck.add(card);
+        for (int i = 0; i < snapshot.slotToCard.length; ++i)
+            if (snapshot.slotToCard[i] != -1)
+                table.restoreCard(snapshot.slotToCard[i], i);
+        for (int i = 0; i < players.length; ++i)
+            players[i].restore(snapshot.scores[i]);
+        resumedTimeLeft = Math.max(snapshot.timeLeftMillis, -1);
+        env.metrics.deckCards = deck.size();
+    }
+
+    /**
+     * Hands a copy of the game's state to the snapshot writer. Called by the dealer thread between claims, when the
+     * table, the deck and the scores cannot change under it; the file is written on the writer's thread.
+     *
+     * @param force - true to take the snapshot even if the last one is more recent than the snapshot interval.
+     */
+    private void takeSnapshot(boolean force) {
+        if (snapshots == null) return;
+        long now = System.currentTimeMillis();
+        if (!force && now - snapshotTime < env.config.snapshotIntervalMillis) {
+            snapshotDirty = true;
+            return;
+        }
+        snapshotTime = now;
+        snapshotDirty = false;
+        int[] slots = new int[env.config.tableSize];
+        for (int i = 0; i < slots.length; ++i)
+            slots[i] = table.cardAt(i);
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = deck.get(i);
+        int[] scores = new int[players.length];
+        for (int i = 0; i < scores.length; ++i)
+            scores[i] = players[i].score();
+        long timeLeft = env.config.turnTimeoutMillis > 0 ? Math.max(reshuffleTime - now, 0) : -1;
+        snapshots.offer(new GameSnapshot(env.util.seed(), timeLeft, slots, cards, scores));
+    }
+
+    /**
+     * Brings the end of the turn forward to the end of the grace period if no set is left on the table, instead of
+     * letting the players press keys in vain until the turn times out. Without a turn timeout this is the only way a
+     * turn ends, so a negative grace period counts as 0.
+     */
+    private void checkDeadTable() {
+        long grace = env.config.deadTableGraceMillis;
+        if (grace < 0 && env.config.turnTimeoutMillis > 0 || table.countSets() > 0) return;
+        env.metrics.deadTables.increment();
+        reshuffleTime = Math.min(reshuffleTime, System.currentTimeMillis() + Math.max(grace, 0));
     }
 
     /**
@@ -191,9 +437,14 @@ public class Dealer implements Runnable {
             }
             //remove cards and update display
             if (setToRemove[i] != -1) {
-                synchronized (this) {
-                    env.ui.removeTokens(setToRemove[i]);
-                    table.removeCard(setToRemove[i]);
+                env.bus.defer(); // the events are published after releasing the lock
+                try {
+                    synchronized (this) {
+                        env.ui.removeTokens(setToRemove[i]);
+                        table.removeCard(setToRemove[i]);
+                    }
+                } finally {
+                    env.bus.flush();
                 }
             }
         }
@@ -204,12 +455,20 @@ public class Dealer implements Runnable {
      */
     private void placeCardsOnTable() {
         // TODO implement
+        GameEvents.TableRefill refill = GameEvents.tableRefill(env.config);
+        int placed = 0;
         for (int i = 0; i < env.config.tableSize; i++) {
-            if (!deck.isEmpty() && (table.slotToCard[i] == null || table.slotToCard[i] == -1)) {
-                int random = (int) (Math.random() * deck.size());
-                table.placeCard(deck.remove(random), i);//taking a random card out of the deck and placing it on the table.
+            if (!deck.isEmpty() && table.cardAt(i) == -1) {
+                int card = dealing.draw(deck, i);
+                table.placeCard(deck.remove(card), i);//taking a card out of the deck and placing it on the table.
+                placed++;
             }
         }
+        env.metrics.deckCards = deck.size();
+        if (refill != null) {
+            refill.slots = placed;
+            refill.commit();
+        }
         cardsOnTable = true;
         for (int i = 0; i < players.length; i++) {
             players[i].wakeUpPlayer();
@@ -217,27 +476,62 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until the timer display changes, the turn ends or the thread is awakened for some purpose. With no timer
+     * displayed and no reshuffle due, the dealer waits for a claim without waking up at all. The display and the
+     * snapshot are updated after releasing the lock, so the players are never held up by the ui.
      */
-    private synchronized void sleepUntilWokenOrTimeout() {
+    private void sleepUntilWokenOrTimeout() {
         // TODO implement
-            while (!terminate && System.currentTimeMillis() < reshuffleTime && requests.isEmpty()) {
+        while (true) {
+            synchronized (this) {
+                if (terminate || reshuffleRequested || System.currentTimeMillis() >= reshuffleTime || !requests.isEmpty())
+                    return;
                 try {
-                    wait(10);
+                    wait(sleepMillis(System.currentTimeMillis()));
                 } catch (InterruptedException ignored) {
                 }
-                updateTimerDisplay(false);
             }
+            updateTimerDisplay(false);
+            if (snapshotDirty) takeSnapshot(false);
+        }
+    }
+
+    /**
+     * @param now - the current time.
+     * @return - the milliseconds until the displayed timer changes, the turn ends or a deferred snapshot is due,
+     *           whichever is first (0 if none ever happens).
+     */
+    private long sleepMillis(long now) {
+        long sleep = reshuffleTime == Long.MAX_VALUE ? Long.MAX_VALUE : reshuffleTime - now;
+        if (env.config.turnTimeoutMillis > 0) {
+            // whole seconds are shown until the warning, and hundredths of a second during it
+            long left = reshuffleTime - now;
+            long warning = left - env.config.turnTimeoutWarningMillis;
+            sleep = Math.min(sleep, warning <= 0 ? WARNING_REFRESH_MILLIS : Math.min(left % 1000 == 0 ? 1000 : left % 1000, warning));
+        } else if (env.config.turnTimeoutMillis == 0) {
+            sleep = Math.min(sleep, 1000 - (now - lastActionTime) % 1000);
+        }
+        if (snapshotDirty)
+            sleep = Math.min(sleep, snapshotTime + env.config.snapshotIntervalMillis - now);
+        return sleep == Long.MAX_VALUE ? 0 : Math.max(sleep, 1);
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset and/or update the countdown (or the elapsed time) and its display.
      */
     private void updateTimerDisplay(boolean reset) {
         // TODO implement
+        long now = System.currentTimeMillis();
         if (reset)
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-        long timer = Math.abs(reshuffleTime - System.currentTimeMillis());
+            lastActionTime = now;
+        if (env.config.turnTimeoutMillis < 0) return;
+        if (env.config.turnTimeoutMillis == 0) {
+            env.ui.setElapsed(now - lastActionTime);
+            return;
+        }
+        if (reset)
+            reshuffleTime = now + env.config.turnTimeoutMillis;
+        long timer = Math.abs(reshuffleTime - now);
         env.ui.setCountdown(timer, reset);
         if (timer <= env.config.turnTimeoutWarningMillis)
             env.ui.setCountdown(timer, true);
@@ -248,16 +542,20 @@ public class Dealer implements Runnable {
      */
     private void removeAllCardsFromTable() {
         // TODO implement
+        GameEvents.Reshuffle reshuffle = GameEvents.reshuffle(env.config);
+        int returned = 0;
+        reshuffleRequested = false;
         cardsOnTable = false;
         //clear all requests
         synchronized (this) {
+            env.metrics.claimsDequeued.add(requests.size());
             requests.clear();
         }
         //update relevant player's fields
         for (int i = 0; i < players.length; i++) {
             synchronized (players[i]) {
                 players[i].usedTokens = 0;
-                players[i].incomingActions.clear();
+                players[i].clearActions();
                 for (int k = 0; k < 2; k++) {
                     for (int j = 0; j < 3; j++) {
                         players[i].setArray[k][j] = -1;
@@ -269,12 +567,21 @@ public class Dealer implements Runnable {
         }
         env.ui.removeTokens();  //remove all tokens from the display
         for (int i = 0; i < env.config.tableSize; i++) { //remove all cards from table and display
-            if (table.slotToCard[i] != -1) {//gray card
-                deck.add(table.slotToCard[i]);
+            if (table.cardAt(i) != -1) {//gray card
+                deck.add(table.cardAt(i));
                 table.removeCard(i);
+                returned++;
             }
         }
         env.ui.removeTokens();  //remove all tokens from the display
+        env.metrics.reshuffles.increment();
+        if (env.bus.hasSubscribers())
+            env.bus.publish(GameEvent.of(GameEvent.Type.RESHUFFLE, -1, -1, -1, returned));
+        env.metrics.deckCards = deck.size();
+        if (reshuffle != null) {
+            reshuffle.cards = returned;
+            reshuffle.commit();
+        }
 
     }
 
@@ -290,15 +597,23 @@ public class Dealer implements Runnable {
                 maxPoints = players[i].score();
             }
         }
-        List winnersList = new LinkedList<>();
+        int count = 0;
+        int[] winners = new int[players.length];
+        boolean[] won = new boolean[players.length];
         for (int i = 0; i < players.length; i++) {
-            if (players[i].score() == maxPoints)
-                winnersList.add(players[i].id);
+            if (players[i].score() == maxPoints) {
+                winners[count++] = players[i].id;
+                won[i] = true;
+            }
+        }
+        env.ui.announceWinner(Arrays.copyOf(winners, count));
+        if (env.leaderboard != null) {
+            for (int i = 0; i < players.length; i++) {
+                LatencyHistogram latencies = env.latencies.player(i, Stage.TOTAL);
+                env.leaderboard.record(env.config.playerNames[i], won[i], players[i].score(), players[i].penalties(),
+                        latencies.count(), latencies.sum());
+            }
         }
-        int[] winners = new int[winnersList.size()];
-        for (int i = 0; i < winners.length; i++)
-            winners[i] = (int) (winnersList.get(i));
-        env.ui.announceWinner(winners);
     }
 
     public void addSetToQueue(int[][] array) {//implement
@@ -308,12 +623,23 @@ public class Dealer implements Runnable {
             e.printStackTrace();
         }
 
+        long place = -1;
+        int[] claimed = null;
         synchronized (this) {
             if (array != null) {
+                enqueuedNanos[array[2][0]] = System.nanoTime();
                 requests.add(array);
+                env.metrics.claimsEnqueued.increment();
+                if (env.bus.hasSubscribers()) { // ordered under the lock so it always precedes its verdict
+                    place = env.bus.reserve();
+                    claimed = array[0].clone();
+                }
+                GameEvents.claimEnqueued(env.config, array[2][0]);
             }
             notifyAll();
         }
         sem.release();
+        if (place >= 0) // published after releasing the locks, so a full buffer never blocks the dealer
+            env.bus.publish(place, GameEvent.of(GameEvent.Type.CLAIM, array[2][0], claimed));
     }
 }
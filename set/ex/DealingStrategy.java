@@ -0,0 +1,35 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.List;
+
+/**
+ * Chooses which card of the deck the dealer places in an empty slot of the table.
+ */
+public interface DealingStrategy {
+
+    /**
+     * @param deck - the cards left in the deck (never empty).
+     * @param slot - the empty slot the card is drawn for.
+     * @return - the index in the deck of the card to place.
+     */
+    int draw(List<Integer> deck, int slot);
+
+    /**
+     * @param env   - the environment (config.dealingStrategy chooses the strategy).
+     * @param table - the table the cards are dealt to.
+     * @return - the configured strategy, drawing from the dealer's random stream.
+     */
+    static DealingStrategy of(Env env, Table table) {
+        switch (env.config.dealingStrategy) {
+            case "guaranteed":
+                return new GuaranteedDealing(env, table, env.util.randomStream(0));
+            case "random":
+                break;
+            default:
+                env.logger.severe("invalid dealing strategy: " + env.config.dealingStrategy + " using random.");
+        }
+        return new RandomDealing(env.util.randomStream(0));
+    }
+}
@@ -0,0 +1,167 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A copy of the state of a game the game can be resumed from: the cards on the table, the dealer's deck, the players'
+ * scores and the time left until the reshuffle. Tokens, queued key presses and freezes are not kept (a resumed turn
+ * starts with no tokens on the table).
+ * <p>
+ * The binary layout (big endian):
+ * <pre>
+ *  0: magic     (int, "SETS")
+ *  4: version   (int)
+ *  8: seed      (long)
+ * 16: timeLeft  (long, the milliseconds left until the reshuffle, -1 if none)
+ * 24: tableSize (int), deck (int, the number of cards in the deck), players (int)
+ * 36: the card in each slot (short, -1 if none), the cards in the deck (short), the score of each player (int)
+ * </pre>
+ */
+public final class GameSnapshot {
+
+    public static final int MAGIC = 0x53455453; // "SETS"
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 36;
+
+    public final long seed;
+    public final long timeLeftMillis;
+    final int[] slotToCard;
+    final int[] deck;
+    final int[] scores;
+
+    GameSnapshot(long seed, long timeLeftMillis, int[] slotToCard, int[] deck, int[] scores) {
+        this.seed = seed;
+        this.timeLeftMillis = timeLeftMillis;
+        this.slotToCard = slotToCard;
+        this.deck = deck;
+        this.scores = scores;
+    }
+
+    private int bytes() {
+        return HEADER_BYTES + 2 * (slotToCard.length + deck.length) + 4 * scores.length;
+    }
+
+    private void write(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(seed).putLong(timeLeftMillis);
+        buffer.putInt(slotToCard.length).putInt(deck.length).putInt(scores.length);
+        for (int card : slotToCard)
+            buffer.putShort((short) card);
+        for (int card : deck)
+            buffer.putShort((short) card);
+        for (int score : scores)
+            buffer.putInt(score);
+    }
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @param path - the snapshot file.
+     * @return - the snapshot.
+     * @throws IOException - if the file cannot be read or is not a snapshot.
+     */
+    public static GameSnapshot read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) throw new IOException("not a game snapshot");
+        if (buffer.getInt() != VERSION) throw new IOException("unsupported snapshot version");
+        long seed = buffer.getLong();
+        long timeLeft = buffer.getLong();
+        int[] slotToCard = new int[buffer.getInt()];
+        int[] deck = new int[buffer.getInt()];
+        int[] scores = new int[buffer.getInt()];
+        if (buffer.remaining() != 2 * (slotToCard.length + deck.length) + 4 * scores.length)
+            throw new IOException("truncated game snapshot");
+        for (int i = 0; i < slotToCard.length; ++i)
+            slotToCard[i] = buffer.getShort();
+        for (int i = 0; i < deck.length; ++i)
+            deck[i] = buffer.getShort();
+        for (int i = 0; i < scores.length; ++i)
+            scores[i] = buffer.getInt();
+        return new GameSnapshot(seed, timeLeft, slotToCard, deck, scores);
+    }
+
+    /**
+     * Writes the snapshots taken by the dealer on a background thread, so that the dealer only pays for copying the
+     * state. Only the latest snapshot matters: one taken while the previous one is still being written replaces it.
+     * Each snapshot is written to a temporary file which then atomically replaces the snapshot file, so a crash
+     * mid-write leaves the previous snapshot intact.
+     */
+    static final class Writer {
+
+        private final Logger logger;
+        private final Path path;
+        private final Path temporary;
+        private final AtomicReference<GameSnapshot> pending = new AtomicReference<>();
+        private final Thread thread;
+        private volatile boolean closed;
+        private ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES);
+
+        Writer(Logger logger, Path path) {
+            this.logger = logger;
+            this.path = path;
+            temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            thread = new Thread(this::run, "snapshot-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Hands a snapshot to the writer thread (never blocks).
+         */
+        void offer(GameSnapshot snapshot) {
+            pending.set(snapshot);
+            LockSupport.unpark(thread);
+        }
+
+        private void run() {
+            while (!closed || pending.get() != null) {
+                GameSnapshot snapshot = pending.getAndSet(null);
+                if (snapshot == null) LockSupport.park(this);
+                else write(snapshot);
+            }
+        }
+
+        private void write(GameSnapshot snapshot) {
+            if (buffer.capacity() < snapshot.bytes()) buffer = ByteBuffer.allocate(snapshot.bytes());
+            buffer.clear();
+            snapshot.write(buffer);
+            buffer.flip();
+            try {
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                    channel.force(false);
+                }
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                logger.severe("cannot write game snapshot " + path + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         * Writes the pending snapshot and stops the writer thread.
+         *
+         * @param delete - true iff the snapshot file should be deleted (the game is over, there is nothing to resume).
+         */
+        void close(boolean delete) {
+            closed = true;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+                if (delete) Files.deleteIfExists(path);
+            } catch (InterruptedException ignored) {
+            } catch (IOException e) {
+                logger.severe("cannot delete game snapshot " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
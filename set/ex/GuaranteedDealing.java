@@ -0,0 +1,128 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Draws random cards, except when the table has no set: then it plans the fewest cards to deal that make a set with
+ * cards already on the table (or among themselves) and deals them first, so a set is on the table whenever the deck and
+ * the empty slots allow, and the table rarely needs to be reshuffled.
+ * <p>
+ * A set that needs j cards from the deck is found by completing each group of featureSize - j table cards and j - 1
+ * deck cards and looking the completion up in the deck; j grows from 1 until a set is found, so for the standard game
+ * a refill of one set costs at most C(12, 2) + 12 * 81 lookups.
+ */
+public class GuaranteedDealing implements DealingStrategy {
+
+    private final Env env;
+    private final Table table;
+    private final SplittableRandom random;
+
+    /**
+     * Used for its completion lookups.
+     */
+    private final LiveSets completions;
+    private final int setSize;
+
+    /**
+     * The cards on the table and in the deck (the deck starting at a random card) and the group being completed
+     * (scratch, filled by plan).
+     */
+    private final int[] tableCards;
+    private final int[] deckCards;
+    private final boolean[] inDeck;
+    private final int[] group;
+    private int tableCount;
+    private int deckCount;
+
+    /**
+     * The planned cards, and the index of the next one to deal.
+     */
+    private final int[] plan;
+    private int planned;
+    private int next;
+
+    public GuaranteedDealing(Env env, Table table, SplittableRandom random) {
+        this.env = env;
+        this.table = table;
+        this.random = random;
+        completions = new LiveSets(env.config);
+        setSize = env.config.featureSize;
+        tableCards = new int[env.config.tableSize];
+        deckCards = new int[env.config.deckSize];
+        inDeck = new boolean[env.config.deckSize];
+        group = new int[Math.max(setSize - 1, 1)];
+        plan = new int[setSize];
+    }
+
+    @Override
+    public int draw(List<Integer> deck, int slot) {
+        if (table.countSets() > 0) {
+            planned = next = 0;
+        } else {
+            if (next == planned) plan(deck, slot);
+            while (next < planned) {
+                int index = deck.indexOf(plan[next++]);
+                if (index >= 0) return index;
+            }
+        }
+        return random.nextInt(deck.size());
+    }
+
+    /**
+     * Plans the cards of a set that fits in the empty slots left (planned is 0 if there is none).
+     */
+    private void plan(List<Integer> deck, int slot) {
+        planned = next = 0;
+        if (setSize < 2) return;
+        int slots = 0;
+        for (int i = slot; i < env.config.tableSize; ++i)
+            if (table.cardAt(i) == -1) ++slots;
+        tableCount = 0;
+        for (int i = 0; i < env.config.tableSize; ++i)
+            if (table.cardAt(i) != -1) tableCards[tableCount++] = table.cardAt(i);
+        deckCount = deck.size();
+        int start = random.nextInt(deckCount);
+        for (int i = 0; i < deckCount; ++i) {
+            deckCards[i] = deck.get((start + i) % deckCount);
+            inDeck[deckCards[i]] = true;
+        }
+        for (int j = 1; j <= Math.min(setSize, Math.min(slots, deckCount)); ++j)
+            if (setSize - j <= tableCount && fromTable(j, 0, 0)) break;
+        for (int i = 0; i < deckCount; ++i)
+            inDeck[deckCards[i]] = false;
+    }
+
+    /**
+     * Chooses the table cards of the group (setSize - j of them), from the index from on.
+     */
+    private boolean fromTable(int j, int depth, int from) {
+        if (depth == setSize - j) return fromDeck(j, depth, 0);
+        for (int i = from; i < tableCount; ++i) {
+            group[depth] = tableCards[i];
+            if (fromTable(j, depth + 1, i + 1)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Chooses the deck cards of the group (j - 1 of them), from the index from on, and completes the group.
+     */
+    private boolean fromDeck(int j, int depth, int from) {
+        if (depth == setSize - 1) {
+            int completion = completions.completion(group);
+            if (completion < 0 || !inDeck[completion]) return false;
+            for (int i = setSize - j; i < setSize - 1; ++i)
+                plan[planned++] = group[i];
+            plan[planned++] = completion;
+            return true;
+        }
+        for (int i = from; i < deckCount; ++i) {
+            group[depth] = deckCards[i];
+            if (fromDeck(j, depth + 1, i + 1)) return true;
+        }
+        return false;
+    }
+}
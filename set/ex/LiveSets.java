@@ -0,0 +1,180 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the number of sets among the cards on the table up to date as cards are placed and removed, so the dealer
+ * knows when no set is left without searching the table.
+ * <p>
+ * Any featureSize - 1 cards of a set determine the last one (in every feature the values are either all the same or
+ * all different), so the sets a card belongs to are counted by completing each group of featureSize - 2 other cards
+ * on the table with it, and looking the completion up: C(n, featureSize - 2) lookups, i.e. n for the standard game.
+ */
+public class LiveSets {
+
+    private final int featureSize;
+    private final int featureCount;
+
+    /**
+     * The features of each card of a deck shape (shared by all the games of that shape, never modified), by
+     * featureSize and featureCount.
+     */
+    private static final ConcurrentHashMap<Integer, int[][]> FEATURES = new ConcurrentHashMap<>();
+
+    /**
+     * The features of each card, and the weight of each feature in a card id.
+     */
+    private final int[][] features;
+    private final int[] weights;
+
+    /**
+     * Whether each card is on the table, and the cards on the table in ascending order.
+     */
+    private final boolean[] onTable;
+    private final int[] cards;
+    private int size;
+
+    /**
+     * The group of cards being completed (indices into cards, and the cards) and the values of one of its features
+     * (scratch).
+     */
+    private final int[] others;
+    private final int[] members;
+    private final int[] group;
+    private final boolean[] seen;
+
+    private volatile int count;
+
+    public LiveSets(Config config) {
+        featureSize = config.featureSize;
+        featureCount = config.featureCount;
+        weights = new int[featureCount];
+        for (int i = featureCount - 1, weight = 1; i >= 0; --i, weight *= featureSize)
+            weights[i] = weight;
+        features = FEATURES.computeIfAbsent(featureSize << 16 | featureCount, shape -> {
+            int[][] features = new int[config.deckSize][featureCount];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int i = 0; i < featureCount; ++i)
+                    features[card][i] = card / weights[i] % featureSize;
+            return features;
+        });
+        onTable = new boolean[config.deckSize];
+        cards = new int[config.deckSize];
+        others = new int[Math.max(featureSize - 2, 0)];
+        members = new int[Math.max(featureSize - 1, 1)];
+        group = new int[Math.max(featureSize - 1, 1)];
+        seen = new boolean[featureSize];
+    }
+
+    /**
+     * @return - the number of sets among the cards on the table.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @param card - a card.
+     * @return - true iff the card is on the table.
+     */
+    public boolean contains(int card) {
+        return onTable[card];
+    }
+
+    /**
+     * Called when a card is placed on the table.
+     */
+    public void add(int card) {
+        if (onTable[card]) return;
+        int sets = setsWith(card);
+        int i = size++;
+        while (i > 0 && cards[i - 1] > card) {
+            cards[i] = cards[i - 1];
+            --i;
+        }
+        cards[i] = card;
+        onTable[card] = true;
+        count += sets;
+    }
+
+    /**
+     * Called when a card is removed from the table.
+     */
+    public void remove(int card) {
+        if (!onTable[card]) return;
+        onTable[card] = false;
+        int i = 0;
+        while (cards[i] != card) ++i;
+        System.arraycopy(cards, i + 1, cards, i, size - i - 1);
+        --size;
+        count -= setsWith(card);
+    }
+
+    /**
+     * @return - the number of sets the card forms with the cards on the table (other than itself).
+     */
+    private int setsWith(int card) {
+        if (featureSize < 2) return 0;
+        if (featureSize == 2) return size - (onTable[card] ? 1 : 0); // any two different cards are a set
+        return setsWith(card, others, 0, 0);
+    }
+
+    /**
+     * Counts the completions of the groups extending the first depth cards of others (indices into cards, ascending)
+     * with cards from index from on.
+     */
+    private int setsWith(int card, int[] others, int depth, int from) {
+        if (depth == others.length) {
+            int last = depth == 0 ? -1 : cards[others[depth - 1]];
+            members[0] = card;
+            for (int i = 0; i < depth; ++i)
+                members[i + 1] = cards[others[i]];
+            int completion = completion(members);
+            return completion > last && completion != card && onTable[completion] ? 1 : 0;
+        }
+        int sets = 0;
+        for (int i = from; i < size; ++i) {
+            if (cards[i] == card) continue;
+            others[depth] = i;
+            sets += setsWith(card, others, depth + 1, i + 1);
+        }
+        return sets;
+    }
+
+    /**
+     * @param group - featureSize - 1 different cards.
+     * @return - the card completing the group to a set (-1 if none).
+     */
+    public int completion(int[] group) {
+        int completion = 0;
+        for (int f = 0; f < featureCount; ++f) {
+            for (int i = 0; i < featureSize - 1; ++i)
+                this.group[i] = features[group[i]][f];
+            int value = complete(this.group, featureSize - 1);
+            if (value < 0) return -1;
+            completion += value * weights[f];
+        }
+        return completion;
+    }
+
+    /**
+     * @return - the value completing the featureSize - 1 values to all the same or all different (-1 if none).
+     */
+    private int complete(int[] values, int n) {
+        boolean same = true;
+        for (int i = 1; i < n; ++i)
+            same &= values[i] == values[0];
+        if (same) return values[0];
+        Arrays.fill(seen, false);
+        for (int i = 0; i < n; ++i) {
+            if (seen[values[i]]) return -1;
+            seen[values[i]] = true;
+        }
+        for (int v = 0; v < featureSize; ++v)
+            if (!seen[v]) return v;
+        return -1;
+    }
+}
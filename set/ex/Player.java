@@ -1,9 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvent;
+import bguspl.set.GameEvents;
+import bguspl.set.ThreadLogger;
 
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Future;
 
 /**
  * This class manages the players' threads and data
@@ -36,7 +41,12 @@ public class Player implements Runnable {
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private ThreadLogger aiThread;
+
+    /**
+     * The AI task, when the players run on the dealer's executor instead of threads of their own.
+     */
+    private Future<?> aiTask;
 
     /**
      * True iff the player is human (not a computer player).
@@ -53,6 +63,16 @@ public class Player implements Runnable {
      */
     private int score;
 
+    /**
+     * The number of penalties the player got.
+     */
+    private int penalties;
+
+    /**
+     * The player's random stream (used by the AI thread to generate key presses).
+     */
+    private final SplittableRandom random;
+
     /**
      * The class constructor.
      *
@@ -72,12 +92,29 @@ public class Player implements Runnable {
 
     public volatile boolean checkingSet;
 
+    /**
+     * The times (System.nanoTime) of the key presses waiting in incomingActions, in a ring starting at pressHead.
+     */
+    private final long[] pressNanos = new long[3];
+    private int pressHead;
+
+    /**
+     * The time of the key press of the action currently executed.
+     */
+    private long actionPressNanos;
+
+    /**
+     * The time of the key press that completed the set currently claimed.
+     */
+    public volatile long claimPressNanos;
+
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
         this.env = env;
         this.dealer = dealer;
         this.table = table;
         this.id = id;
         this.human = human;
+        random = env.util.randomStream(id + 1);
         usedTokens = 0;
         setArray = new int[3][3];//row 0 represents card id //row 1 represents card slot
         // cell [2][0] represents player number
@@ -106,22 +143,31 @@ public class Player implements Runnable {
             // TODO implement main player loop
             if (penalizedTime > 0)
                 penalize();
-            synchronized (this) {
-                while (!terminate && penalizedTime == 0 && (incomingActions.isEmpty() || !dealer.cardsOnTable || checkingSet)) {
-                    try {
-                        this.wait();
-                    } catch (InterruptedException ignored) {
+            // the token and claim events are ordered under the locks and published after releasing them
+            env.bus.defer();
+            try {
+                synchronized (this) {
+                    while (!terminate && penalizedTime == 0 && (incomingActions.isEmpty() || !dealer.cardsOnTable || checkingSet)) {
+                        try {
+                            this.wait();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    //the thread execute the next action from the queue
+                    if (!incomingActions.isEmpty() && !terminate && incomingActions.peek() != null && penalizedTime == 0 && dealer.cardsOnTable && !checkingSet) {
+                        actionPressNanos = pressNanos[pressHead];
+                        pressHead = (pressHead + 1) % pressNanos.length;
+                        actionFromQueue(incomingActions.remove());
+                        notifyAll();
                     }
                 }
-                //the thread execute the next action from the queue
-                if (!incomingActions.isEmpty() && !terminate && incomingActions.peek() != null && penalizedTime == 0 && dealer.cardsOnTable && !checkingSet) {
-                    actionFromQueue(incomingActions.remove());
-                    notifyAll();
-                }
+            } finally {
+                env.bus.flush();
             }
         }
         if (!human) try {
-            aiThread.join();
+            if (aiTask != null) dealer.join(aiTask, "computer-" + id);
+            else aiThread.joinWithLog();
         } catch (InterruptedException ignored) {
         }
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
@@ -133,7 +179,7 @@ public class Player implements Runnable {
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
+        Runnable ai = () -> {
             System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
             while (!terminate) {
                 // TODO implement player key press simulator
@@ -147,11 +193,16 @@ public class Player implements Runnable {
                     }
                 }
                 //System.out.println("out of wait");
-                keyPressed((int) (Math.random() * env.config.tableSize));
+                keyPressed(random.nextInt(env.config.tableSize));
             }
             System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
-        }, "computer-" + id);
-        aiThread.start();
+        };
+        if (dealer.executor != null) {
+            aiTask = dealer.submit(ai, "computer-" + id);
+        } else {
+            aiThread = new ThreadLogger(ai, "computer-" + id, env.logger);
+            aiThread.startWithLog();
+        }
     }
 
     /**
@@ -169,19 +220,32 @@ public class Player implements Runnable {
      * This method is called when a key is pressed.
      *
      * @param slot - the slot corresponding to the key pressed.
+     * @return - true iff the key press was queued (false if the queue is full or the player cannot act now).
      */
-    public void keyPressed(int slot) {
+    public boolean keyPressed(int slot) {
         // TODO implement
+        boolean accepted = false;
+        long place = -1;
         synchronized (this) {
-            if (incomingActions.size() < 3 && penalizedTime == 0 && table.slotToCard[slot] != null && table.slotToCard[slot] != -1 && dealer.cardsOnTable && !checkingSet) {
+            if (incomingActions.size() < 3 && penalizedTime == 0 && table.cardAt(slot) != -1 && dealer.cardsOnTable && !checkingSet) {
+                pressNanos[(pressHead + incomingActions.size()) % pressNanos.length] = System.nanoTime();
                 incomingActions.add(slot); //adding action to the action queue.
+                accepted = true;
+                // only accepted presses (the ai keeps pressing while frozen), ordered under the lock so that the press
+                // always precedes the token it places or removes, and published after it so a full buffer never
+                // blocks the threads waiting for the lock
+                if (env.bus.hasSubscribers())
+                    place = env.bus.reserve();
                 notifyAll();
             }
         }
+        if (place >= 0)
+            env.bus.publish(place, GameEvent.of(GameEvent.Type.KEY_PRESSED, id, slot, -1, 0));
+        return accepted;
     }
 
     public synchronized void actionFromQueue(int slot) {
-        if (table.slotToCard[slot] != null && table.slotToCard[slot] != -1) {
+        if (table.cardAt(slot) != -1) {
             boolean removed = false;
             for (int i = 0; !removed && i < 3; i++) {
                 if (setArray[1][i] == slot) {//if there is a token on the slot-remove action
@@ -200,7 +264,7 @@ public class Player implements Runnable {
                 synchronized (dealer) {
                     table.placeToken(this.id, slot);
                 }
-                int cardId = table.slotToCard[slot];
+                int cardId = table.cardAt(slot);
                 for (int i = 0; !placed && i < 3; i++) {
                     if (setArray[0][i] == -1) {
                         //update set array
@@ -213,6 +277,7 @@ public class Player implements Runnable {
                 }
                 if (usedTokens == 3) {//if third token was placed.
                     checkingSet = true;
+                    claimPressNanos = actionPressNanos;
                     dealer.addSetToQueue(setArray);
 
                 }
@@ -221,6 +286,14 @@ public class Player implements Runnable {
         }
     }
 
+    /**
+     * Discards all the key presses waiting to be executed.
+     */
+    public synchronized void clearActions() {
+        incomingActions.clear();
+        pressHead = 0;
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -243,16 +316,31 @@ public class Player implements Runnable {
      */
     public void penalty() {
         // TODO implement
+        ++penalties;
         synchronized (this) {
             penalizedTime = env.config.penaltyFreezeMillis;
             notifyAll();
         }
     }
 
+    /**
+     * Restores the score of a player resumed from a snapshot.
+     *
+     * @param score - the score to restore.
+     */
+    public void restore(int score) {
+        this.score = score;
+        env.ui.setScore(id, score);
+    }
+
     public int score() {
         return score;
     }
 
+    public int penalties() {
+        return penalties;
+    }
+
     public void join() {
         try {
             playerThread.join();
@@ -262,6 +350,7 @@ public class Player implements Runnable {
 
     public void penalize() {
         if (penalizedTime > 0) { //player penalized
+            GameEvents.PlayerFreeze freeze = GameEvents.playerFreeze(env.config, id, penalizedTime);
             env.ui.setFreeze(id, penalizedTime);
             long time = penalizedTime;
             while (time > 0) {
@@ -283,6 +372,7 @@ public class Player implements Runnable {
                     env.ui.setFreeze(id, time);
                 }
             }
+            GameEvents.commit(freeze);
         }
         penalizedTime = 0;
     }
@@ -0,0 +1,21 @@
+package bguspl.set.ex;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Draws a random card from the deck (the dealer's default).
+ */
+public class RandomDealing implements DealingStrategy {
+
+    private final SplittableRandom random;
+
+    public RandomDealing(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int draw(List<Integer> deck, int slot) {
+        return random.nextInt(deck.size());
+    }
+}
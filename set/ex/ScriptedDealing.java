@@ -0,0 +1,54 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Deals the cards in a recorded order (e.g. the card placements of a game journal): each slot gets the cards that
+ * were placed in it, in the same order. If the game diverges from the recording and the next card of a slot is not
+ * in the deck, the first card of the deck is drawn instead and counted as a miss.
+ */
+public class ScriptedDealing implements DealingStrategy {
+
+    /**
+     * The recorded cards of each slot, and the index of the next one to deal.
+     */
+    private final int[][] cards;
+    private final int[] next;
+
+    private int misses;
+
+    /**
+     * @param tableSize - the number of slots on the table.
+     * @param slots     - the slots of the recorded placements, in order.
+     * @param cards     - the cards of the recorded placements, in order.
+     */
+    public ScriptedDealing(int tableSize, int[] slots, int[] cards) {
+        int[] counts = new int[tableSize];
+        for (int slot : slots) ++counts[slot];
+        this.cards = new int[tableSize][];
+        for (int slot = 0; slot < tableSize; ++slot)
+            this.cards[slot] = new int[counts[slot]];
+        next = new int[tableSize];
+        for (int i = 0; i < slots.length; ++i)
+            this.cards[slots[i]][next[slots[i]]++] = cards[i];
+        Arrays.fill(next, 0);
+    }
+
+    @Override
+    public int draw(List<Integer> deck, int slot) {
+        if (next[slot] < cards[slot].length) {
+            int index = deck.indexOf(cards[slot][next[slot]++]);
+            if (index >= 0) return index;
+        }
+        ++misses;
+        return 0;
+    }
+
+    /**
+     * @return - the number of cards that could not be dealt as recorded.
+     */
+    public int misses() {
+        return misses;
+    }
+}
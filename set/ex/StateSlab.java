@@ -0,0 +1,213 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Off-heap storage for the state of many games: one direct buffer divided into fixed size regions, a region per game,
+ * holding the game's table (the card in each slot and the slot of each card) and the dealer's deck. The state of a
+ * game hosted in a region adds no objects for the garbage collector to trace, so the heap and the collection pauses do
+ * not grow with the number of mostly idle games.
+ * <p>
+ * The layout of a region (all the games of a slab share the configuration the slab was created with):
+ * <pre>
+ * slots:  the card in each slot (short, -1 if none)
+ * cards:  the slot of each card (short, -1 if none)
+ * count:  the number of cards in the deck (int)
+ * deck:   the cards in the deck (short)
+ * </pre>
+ */
+public class StateSlab {
+
+    private final int tableSize;
+    private final int deckSize;
+
+    /**
+     * The offsets of the parts of a region and the size of a region (rounded up to 8 bytes).
+     */
+    private final int cardsOffset;
+    private final int countOffset;
+    private final int deckOffset;
+    private final int regionBytes;
+
+    private final ByteBuffer slab;
+
+    /**
+     * The indices of the free regions (a stack of freeCount entries).
+     */
+    private final int[] free;
+    private int freeCount;
+
+    /**
+     * @param config - the configuration of the games (the sizes of the table and the deck).
+     * @param games  - the number of regions.
+     */
+    public StateSlab(Config config, int games) {
+        if (config.deckSize > Short.MAX_VALUE) throw new IllegalArgumentException("deck too large: " + config.deckSize);
+        tableSize = config.tableSize;
+        deckSize = config.deckSize;
+        cardsOffset = 2 * tableSize;
+        countOffset = (cardsOffset + 2 * deckSize + 3) & ~3;
+        deckOffset = countOffset + 4;
+        regionBytes = (deckOffset + 2 * deckSize + 7) & ~7;
+        if ((long) regionBytes * games > Integer.MAX_VALUE) throw new IllegalArgumentException("too many games: " + games);
+        slab = ByteBuffer.allocateDirect(regionBytes * games);
+        free = new int[games];
+        for (int i = 0; i < games; ++i)
+            free[i] = games - 1 - i;
+        freeCount = games;
+    }
+
+    /**
+     * @return - the number of bytes each game takes.
+     */
+    public int regionBytes() {
+        return regionBytes;
+    }
+
+    /**
+     * @return - the number of regions in use.
+     */
+    public synchronized int used() {
+        return free.length - freeCount;
+    }
+
+    /**
+     * Takes a free region for a game; the region starts with an empty table and an empty deck.
+     *
+     * @return - the region.
+     * @throws IllegalStateException - if all the regions are in use.
+     */
+    public Region allocate() {
+        int index;
+        synchronized (this) {
+            if (freeCount == 0) throw new IllegalStateException("all " + free.length + " game states are in use");
+            index = free[--freeCount];
+        }
+        Region region = new Region(index * regionBytes);
+        for (int i = 0; i < tableSize; ++i)
+            region.setCard(i, -1);
+        for (int i = 0; i < deckSize; ++i)
+            region.setSlot(i, -1);
+        region.setCount(0);
+        return region;
+    }
+
+    private synchronized void free(Region region) {
+        free[freeCount++] = region.base / regionBytes;
+    }
+
+    /**
+     * The state of one game in the slab.
+     */
+    public final class Region {
+
+        private final int base;
+        private boolean released;
+
+        private Region(int base) {
+            this.base = base;
+        }
+
+        int card(int slot) {
+            return slab.getShort(base + 2 * slot);
+        }
+
+        void setCard(int slot, int card) {
+            slab.putShort(base + 2 * slot, (short) card);
+        }
+
+        int slot(int card) {
+            return slab.getShort(base + cardsOffset + 2 * card);
+        }
+
+        void setSlot(int card, int slot) {
+            slab.putShort(base + cardsOffset + 2 * card, (short) slot);
+        }
+
+        private int count() {
+            return slab.getInt(base + countOffset);
+        }
+
+        private void setCount(int count) {
+            slab.putInt(base + countOffset, count);
+        }
+
+        /**
+         * Returns the region to the slab (once the game ended).
+         */
+        public synchronized void release() {
+            if (released) return;
+            released = true;
+            free(this);
+        }
+
+        /**
+         * @return - the dealer's deck, as a list over the region (no card is kept on the heap).
+         */
+        Deck deck() {
+            return new Deck();
+        }
+
+        /**
+         * The dealer's deck in the region. Cards are boxed when read (Integer.valueOf, so a deck of less than 128 cards
+         * allocates nothing).
+         */
+        final class Deck extends AbstractList<Integer> implements RandomAccess {
+
+            private int at(int index) {
+                return base + deckOffset + 2 * index;
+            }
+
+            @Override
+            public Integer get(int index) {
+                if (index < 0 || index >= count()) throw new IndexOutOfBoundsException(index);
+                return (int) slab.getShort(at(index));
+            }
+
+            @Override
+            public int size() {
+                return count();
+            }
+
+            @Override
+            public Integer set(int index, Integer card) {
+                Integer previous = get(index);
+                slab.putShort(at(index), (short) (int) card);
+                return previous;
+            }
+
+            @Override
+            public void add(int index, Integer card) {
+                int count = count();
+                if (index < 0 || index > count) throw new IndexOutOfBoundsException(index);
+                if (count == deckSize) throw new IllegalStateException("deck full");
+                for (int i = count; i > index; --i)
+                    slab.putShort(at(i), slab.getShort(at(i - 1)));
+                slab.putShort(at(index), (short) (int) card);
+                setCount(count + 1);
+                ++modCount;
+            }
+
+            @Override
+            public Integer remove(int index) {
+                Integer card = get(index);
+                int count = count();
+                for (int i = index; i < count - 1; ++i)
+                    slab.putShort(at(i), slab.getShort(at(i + 1)));
+                setCount(count - 1);
+                ++modCount;
+                return card;
+            }
+
+            @Override
+            public void clear() {
+                setCount(0);
+                ++modCount;
+            }
+        }
+    }
+}
@@ -4,8 +4,8 @@ import bguspl.set.Env;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class contains the data that is visible to the player.
@@ -29,6 +29,16 @@ public class Table {
      */
     protected final Integer[] cardToSlot; // slot per card (if any)
 
+    /**
+     * The off-heap state of the table (null if the table is kept in slotToCard and cardToSlot, which are null if not).
+     */
+    final StateSlab.Region state;
+
+    /**
+     * The number of sets among the cards on the table.
+     */
+    private final LiveSets sets;
+
     /**
      * Constructor for testing.
      *
@@ -41,6 +51,24 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        state = null;
+        sets = new LiveSets(env.config);
+        for (Integer card : slotToCard)
+            if (card != null && card != -1) sets.add(card);
+    }
+
+    /**
+     * Constructor for a table kept off-heap.
+     *
+     * @param env   - the game environment objects.
+     * @param state - the slab region of the game (see StateSlab).
+     */
+    public Table(Env env, StateSlab.Region state) {
+        this.env = env;
+        this.state = state;
+        slotToCard = null;
+        cardToSlot = null;
+        sets = new LiveSets(env.config);
     }
 
     /**
@@ -57,10 +85,11 @@ public class Table {
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        List<Integer> deck = IntStream.range(0, env.config.tableSize).map(this::cardAt).filter(card -> card != -1)
+                .boxed().collect(Collectors.toList());
         env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            List<Integer> slots = Arrays.stream(set).mapToObj(this::slotOf).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
         });
@@ -73,12 +102,61 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int slot = 0; slot < env.config.tableSize; ++slot)
+            if (cardAt(slot) != -1)
                 ++cards;
         return cards;
     }
 
+    /**
+     * @return - the number of sets among the cards on the table (kept up to date as cards are placed and removed).
+     */
+    public int countSets() {
+        return sets.count();
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return - the card in the slot (-1 if none).
+     */
+    public int cardAt(int slot) {
+        if (state != null) return state.card(slot);
+        Integer card = slotToCard[slot];
+        return card == null ? -1 : card;
+    }
+
+    /**
+     * @param card - the card.
+     * @return - the slot the card is in (-1 if it is not on the table).
+     */
+    public int slotOf(int card) {
+        if (state != null) return state.slot(card);
+        Integer slot = cardToSlot[card];
+        return slot == null ? -1 : slot;
+    }
+
+    private void set(int card, int slot) {
+        sets.add(card);
+        if (state != null) {
+            state.setSlot(card, slot);
+            state.setCard(slot, card);
+        } else {
+            cardToSlot[card] = slot;
+            slotToCard[slot] = card;
+        }
+    }
+
+    private void clear(int card, int slot) {
+        sets.remove(card);
+        if (state != null) {
+            state.setSlot(card, -1);
+            state.setCard(slot, -1);
+        } else {
+            cardToSlot[card] = -1;
+            slotToCard[slot] = -1;
+        }
+    }
+
     /**
      * Places a card on the table in a grid slot.
      *
@@ -92,13 +170,23 @@ public class Table {
         } catch (InterruptedException ignored) {
         }
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        set(card, slot);
 
         // TODO implement
         env.ui.placeCard(card, slot);
     }
 
+    /**
+     * Places a card on the table with no dealing delay (used when resuming a game from a snapshot).
+     *
+     * @param card - the card id to place in the slot.
+     * @param slot - the slot in which the card should be placed.
+     */
+    public void restoreCard(int card, int slot) {
+        set(card, slot);
+        env.ui.placeCard(card, slot);
+    }
+
     /**
      * Removes a card from a grid slot on the table.
      *
@@ -110,10 +198,9 @@ public class Table {
         } catch (InterruptedException ignored) {
         }
         // TODO implement
-        int cardId = slotToCard[slot];
+        int cardId = cardAt(slot);
         if (cardId != -1) {
-            cardToSlot[cardId] = -1;
-            slotToCard[slot] = -1;
+            clear(cardId, slot);
             env.ui.removeCard(slot);
         }
     }